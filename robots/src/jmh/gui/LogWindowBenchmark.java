@@ -0,0 +1,67 @@
+package gui;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import log.LogLevel;
+import log.LogWindowSource;
+
+/**
+ * Обновление окна логов после пачки новых записей. Окно не показывается,
+ * поэтому меряется модель списка и прокрутка, но не вывод на экран.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class LogWindowBenchmark
+{
+    @Param({"100", "100000"})
+    public int capacity;
+
+    @Param({"1", "100"})
+    public int batch;
+
+    private LogWindowSource m_source;
+    private LogWindow m_window;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        m_source = new LogWindowSource(capacity);
+        for (int i = 0; i < capacity; i++)
+        {
+            m_source.append(LogLevel.Debug, "Новая строка");
+        }
+        m_window = new LogWindow(m_source);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        m_window.dispose();
+        m_source.close();
+    }
+
+    @Benchmark
+    public int updateLogContent()
+    {
+        for (int i = 0; i < batch; i++)
+        {
+            m_source.append(LogLevel.Debug, "Новая строка");
+        }
+        m_window.updateLogContent();
+        return m_source.size();
+    }
+}
@@ -0,0 +1,77 @@
+package gui;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import model.RobotWorld;
+import model.SimulationEngine;
+
+/**
+ * Отрисовка поля с N роботами во внеэкранный BufferedImage.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PaintBenchmark
+{
+    private static final int WIDTH = 1024;
+    private static final int HEIGHT = 768;
+
+    @Param({"1", "100", "10000", "20000"})
+    public int robots;
+
+    private GameVisualizer m_visualizer;
+    private BufferedImage m_image;
+    private Graphics2D m_graphics;
+
+    @Setup
+    public void setUp()
+    {
+        m_visualizer = new GameVisualizer();
+        m_visualizer.setPaused(true);
+        m_visualizer.setSize(WIDTH, HEIGHT);
+        SimulationEngine engine = m_visualizer.getEngine();
+        synchronized (engine)
+        {
+            RobotWorld world = engine.getWorld();
+            Random random = new Random(42);
+            for (int i = 0; i < robots; i++)
+            {
+                world.addRobot(random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT,
+                    random.nextDouble() * 2 * Math.PI,
+                    random.nextDouble() * WIDTH, random.nextDouble() * HEIGHT);
+            }
+            engine.step();
+        }
+        m_image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        m_graphics = m_image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        m_graphics.dispose();
+        m_visualizer.stop();
+    }
+
+    @Benchmark
+    public BufferedImage paint()
+    {
+        m_visualizer.paint(m_graphics);
+        return m_image;
+    }
+}
@@ -0,0 +1,54 @@
+package log;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * LogWindowSource.append из нескольких потоков-производителей с одним
+ * подписчиком, как при открытом окне логов. Число потоков меняется через -t.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class LogAppendBenchmark
+{
+    @Param({"100", "100000"})
+    public int capacity;
+
+    private LogWindowSource m_source;
+    private LogChangeListener m_listener;
+
+    @Setup
+    public void setUp()
+    {
+        m_source = new LogWindowSource(capacity);
+        m_listener = () -> { };
+        m_source.registerListener(m_listener);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        m_source.unregisterListener(m_listener);
+        m_source.close();
+    }
+
+    @Benchmark
+    public void append()
+    {
+        m_source.append(LogLevel.Debug, "Новая строка");
+    }
+}
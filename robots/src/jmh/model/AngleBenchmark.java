@@ -0,0 +1,66 @@
+package model;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Нормализация угла на типичных входах (одна поправка на 2π)
+ * и на далёких от диапазона значениях.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class AngleBenchmark
+{
+    private static final int ANGLES = 1024;
+
+    @Param({"7", "1000"})
+    public double range;
+
+    private final double[] m_angles = new double[ANGLES];
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        for (int i = 0; i < ANGLES; i++)
+        {
+            m_angles[i] = (random.nextDouble() * 2 - 1) * range;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public void difference(Blackhole blackhole)
+    {
+        double previous = 0;
+        for (double angle : m_angles)
+        {
+            blackhole.consume(Angles.difference(previous, angle));
+            previous = angle;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ANGLES)
+    public void normalize(Blackhole blackhole)
+    {
+        for (double angle : m_angles)
+        {
+            blackhole.consume(Angles.normalize(angle));
+        }
+    }
+}
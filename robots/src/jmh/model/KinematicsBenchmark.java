@@ -0,0 +1,69 @@
+package model;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Один шаг кинематики (бывший GameVisualizer.moveRobot) для N роботов.
+ * Цели вынесены далеко, чтобы за итерацию никто не доехал и цикл
+ * не выродился в одну проверку расстояния.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class KinematicsBenchmark
+{
+    @Param({"1", "1000", "100000"})
+    public int robots;
+
+    @Param({"scalar", "vector"})
+    public String kernel;
+
+    private RobotWorld m_world;
+
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        KinematicsKernel selected = "vector".equals(kernel)
+            ? KinematicsKernel.vector() : KinematicsKernel.scalar();
+        if (selected == null)
+        {
+            throw new IllegalStateException("jdk.incubator.vector is not available");
+        }
+        m_world = createWorld(robots);
+        m_world.setKernel(selected);
+    }
+
+    static RobotWorld createWorld(int robots)
+    {
+        // плотность как у 1000 роботов на поле 1000x1000
+        double side = Math.max(1000, Math.sqrt(robots * 1000.0));
+        Random random = new Random(42);
+        RobotWorld world = new RobotWorld(robots);
+        for (int i = 0; i < robots; i++)
+        {
+            world.addRobot(random.nextDouble() * side, random.nextDouble() * side,
+                random.nextDouble() * 2 * Math.PI,
+                1e7 * (random.nextDouble() - 0.5), 1e7 * (random.nextDouble() - 0.5));
+        }
+        return world;
+    }
+
+    @Benchmark
+    public int update()
+    {
+        return m_world.update(SimulationEngine.DEFAULT_TIME_STEP);
+    }
+}
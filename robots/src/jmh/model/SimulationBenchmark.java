@@ -0,0 +1,64 @@
+package model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Полный тик движка, который раньше выполнял
+ * GameVisualizer.onModelUpdateEvent: кинематика, пространственный индекс,
+ * столкновения и публикация снимка.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class SimulationBenchmark
+{
+    @Param({"1", "1000", "100000"})
+    public int robots;
+
+    @Param({"sequential", "parallel"})
+    public String updater;
+
+    private SimulationEngine m_engine;
+    private ParallelWorldUpdater m_parallel;
+
+    @Setup(Level.Iteration)
+    public void setUp()
+    {
+        m_engine = new SimulationEngine(KinematicsBenchmark.createWorld(robots));
+        if ("parallel".equals(updater))
+        {
+            m_parallel = new ParallelWorldUpdater();
+            m_engine.setUpdater(m_parallel);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown()
+    {
+        if (m_parallel != null)
+        {
+            m_parallel.close();
+            m_parallel = null;
+        }
+    }
+
+    @Benchmark
+    public long step()
+    {
+        m_engine.step();
+        return m_engine.getTickCount();
+    }
+}
@@ -0,0 +1,172 @@
+package gui;
+
+import java.awt.Rectangle;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import model.WorldCheckpoint;
+
+/**
+ * Раскладка окон вместе с мирами игровых окон в одном двоичном файле.
+ *
+ * Формат: сигнатура и версия формата (int, int), число окон (int), затем
+ * для каждого окна вид (byte), границы (четыре int), признак мира (byte)
+ * и сам мир в формате {@link WorldCheckpoint}. Файл с другой версией
+ * не читается.
+ *
+ * Запись идёт в отдельном потоке во временный файл рядом с основным,
+ * который затем атомарно подменяет основной: оборванная запись не
+ * портит предыдущее сохранение.
+ */
+final class Checkpoint {
+    static final int FORMAT_VERSION = 2;
+    private static final int MAGIC = 0x52434B50;
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+    private static final int WINDOW_HEADER_SIZE = 1 + 4 * 4 + 1;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<WindowState> m_windows;
+
+    Checkpoint(List<WindowState> windows) {
+        m_windows = Collections.unmodifiableList(new ArrayList<>(windows));
+    }
+
+    /**
+     * Файл из свойства robots.checkpoint, по умолчанию ~/.robots/checkpoint.bin.
+     */
+    static Path defaultPath() {
+        String path = System.getProperty("robots.checkpoint");
+        if (path != null) {
+            return Paths.get(path);
+        }
+        return Paths.get(System.getProperty("user.home"), ".robots", "checkpoint.bin");
+    }
+
+    List<WindowState> getWindows() {
+        return m_windows;
+    }
+
+    CompletableFuture<Void> saveAsync(Path file) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                save(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, writer);
+    }
+
+    void save(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                write(channel);
+                channel.force(false);
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void write(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(m_windows.size());
+        writeFully(channel, header);
+        ByteBuffer windowHeader = ByteBuffer.allocate(WINDOW_HEADER_SIZE);
+        for (WindowState window : m_windows) {
+            Rectangle bounds = window.getBounds();
+            WorldCheckpoint world = window.getWorld();
+            windowHeader.clear();
+            windowHeader.put((byte) window.getKind().ordinal())
+                    .putInt(bounds.x).putInt(bounds.y).putInt(bounds.width).putInt(bounds.height)
+                    .put((byte) (world != null ? 1 : 0));
+            writeFully(channel, windowHeader);
+            if (world != null) {
+                world.writeTo(channel);
+            }
+        }
+    }
+
+    /**
+     * null, если файла нет.
+     */
+    static Checkpoint load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, HEADER_SIZE);
+            int magic = header.getInt();
+            int version = header.getInt();
+            int count = header.getInt();
+            if (magic != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + file);
+            }
+            WindowState.Kind[] kinds = WindowState.Kind.values();
+            List<WindowState> windows = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                ByteBuffer windowHeader = readFully(channel, WINDOW_HEADER_SIZE);
+                int kind = windowHeader.get();
+                if (kind < 0 || kind >= kinds.length) {
+                    throw new IOException("Unknown window kind " + kind + " in " + file);
+                }
+                WindowState window = new WindowState(kinds[kind]);
+                window.setBounds(new Rectangle(windowHeader.getInt(), windowHeader.getInt(),
+                        windowHeader.getInt(), windowHeader.getInt()));
+                if (windowHeader.get() != 0) {
+                    window.setWorld(WorldCheckpoint.readFrom(channel));
+                }
+                windows.add(window);
+            }
+            return new Checkpoint(windows);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Checkpoint is truncated");
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,230 @@
+package gui;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import model.WorldSnapshot;
+
+/**
+ * Помнит, что было нарисовано для каждого робота (позиция в пикселях,
+ * номер спрайта курса и цель), и по новому снимку находит области, которые
+ * нужно перерисовать: старое и новое место каждого изменившегося спрайта.
+ * Области округляются до плиток TILE_SIZE и склеиваются в несколько
+ * прямоугольников.
+ */
+final class DirtyRegions
+{
+    static final int TILE_SIZE = 64;
+    static final int MAX_RECTANGLES = 8;
+
+    private static final int SPRITE_HALF_SIZE = 18;
+    private static final int SELECTION_HALF_SIZE = 21;
+
+    private int m_count = -1;
+    private int[] m_x = new int[0];
+    private int[] m_y = new int[0];
+    private int[] m_heading = new int[0];
+    private int[] m_targetX = new int[0];
+    private int[] m_targetY = new int[0];
+    private int m_selectedRobot = -1;
+
+    private int m_width;
+    private int m_height;
+    private int m_columns;
+    private int m_rows;
+    private boolean[] m_tiles = new boolean[0];
+    private int m_dirtyTiles;
+    private final List<Rectangle> m_rectangles = new ArrayList<>();
+
+    /**
+     * Следующий вызов {@link #collect} потребует полной перерисовки.
+     */
+    void invalidate()
+    {
+        m_count = -1;
+    }
+
+    /**
+     * Сравнивает снимок с нарисованным ранее и запоминает его как нарисованный.
+     * Возвращает null, если перерисовать нужно всё, пустой список, если
+     * на экране ничего не изменилось, иначе прямоугольники для перерисовки.
+     */
+    List<Rectangle> collect(WorldSnapshot snapshot, int selectedRobot, int width, int height)
+    {
+        int count = snapshot.size();
+        boolean full = count != m_count || width != m_width || height != m_height;
+        if (full)
+        {
+            resize(count, width, height);
+        }
+        else
+        {
+            Arrays.fill(m_tiles, false);
+            m_dirtyTiles = 0;
+        }
+        if (selectedRobot != m_selectedRobot && !full)
+        {
+            markSelection(m_selectedRobot);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            int x = round(snapshot.getInterpolatedX(i));
+            int y = round(snapshot.getInterpolatedY(i));
+            int heading = RobotSprites.headingOf(snapshot.getInterpolatedDirection(i));
+            int targetX = round(snapshot.getTargetX(i));
+            int targetY = round(snapshot.getTargetY(i));
+            if (!full)
+            {
+                boolean moved = x != m_x[i] || y != m_y[i];
+                if (moved || heading != m_heading[i])
+                {
+                    mark(m_x[i], m_y[i], SPRITE_HALF_SIZE);
+                    mark(x, y, SPRITE_HALF_SIZE);
+                }
+                if (targetX != m_targetX[i] || targetY != m_targetY[i])
+                {
+                    mark(m_targetX[i], m_targetY[i], SPRITE_HALF_SIZE);
+                    mark(targetX, targetY, SPRITE_HALF_SIZE);
+                }
+                if (i == selectedRobot && (moved || selectedRobot != m_selectedRobot))
+                {
+                    markSelection(i);
+                    mark(x, y, SELECTION_HALF_SIZE);
+                }
+            }
+            m_x[i] = x;
+            m_y[i] = y;
+            m_heading[i] = heading;
+            m_targetX[i] = targetX;
+            m_targetY[i] = targetY;
+        }
+        m_selectedRobot = selectedRobot;
+        if (full || 2 * m_dirtyTiles > m_tiles.length)
+        {
+            return null;
+        }
+        return rectangles();
+    }
+
+    private void resize(int count, int width, int height)
+    {
+        m_count = count;
+        if (m_x.length < count)
+        {
+            m_x = new int[count];
+            m_y = new int[count];
+            m_heading = new int[count];
+            m_targetX = new int[count];
+            m_targetY = new int[count];
+        }
+        m_width = width;
+        m_height = height;
+        m_columns = (Math.max(width, 0) + TILE_SIZE - 1) / TILE_SIZE;
+        m_rows = (Math.max(height, 0) + TILE_SIZE - 1) / TILE_SIZE;
+        m_tiles = new boolean[m_columns * m_rows];
+        m_dirtyTiles = 0;
+    }
+
+    private void markSelection(int robot)
+    {
+        if (robot >= 0 && robot < m_count)
+        {
+            mark(m_x[robot], m_y[robot], SELECTION_HALF_SIZE);
+        }
+    }
+
+    private void mark(int x, int y, int halfSize)
+    {
+        int fromColumn = Math.max(0, Math.floorDiv(x - halfSize, TILE_SIZE));
+        int toColumn = Math.min(m_columns - 1, Math.floorDiv(x + halfSize, TILE_SIZE));
+        int fromRow = Math.max(0, Math.floorDiv(y - halfSize, TILE_SIZE));
+        int toRow = Math.min(m_rows - 1, Math.floorDiv(y + halfSize, TILE_SIZE));
+        for (int row = fromRow; row <= toRow; row++)
+        {
+            for (int column = fromColumn; column <= toColumn; column++)
+            {
+                int tile = row * m_columns + column;
+                if (!m_tiles[tile])
+                {
+                    m_tiles[tile] = true;
+                    m_dirtyTiles++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Склеивает отрезки грязных плиток в строке, а одинаковые отрезки
+     * соседних строк — в один прямоугольник. Если прямоугольников
+     * получается больше MAX_RECTANGLES, возвращает их объединение.
+     */
+    private List<Rectangle> rectangles()
+    {
+        m_rectangles.clear();
+        if (m_dirtyTiles == 0)
+        {
+            return m_rectangles;
+        }
+        List<Rectangle> open = new ArrayList<>();
+        for (int row = 0; row < m_rows; row++)
+        {
+            List<Rectangle> next = new ArrayList<>();
+            int column = 0;
+            while (column < m_columns)
+            {
+                if (!m_tiles[row * m_columns + column])
+                {
+                    column++;
+                    continue;
+                }
+                int start = column;
+                while (column < m_columns && m_tiles[row * m_columns + column])
+                {
+                    column++;
+                }
+                Rectangle run = new Rectangle(start * TILE_SIZE, row * TILE_SIZE,
+                    (column - start) * TILE_SIZE, TILE_SIZE);
+                Rectangle extended = null;
+                for (Rectangle rectangle : open)
+                {
+                    if (rectangle.x == run.x && rectangle.width == run.width)
+                    {
+                        extended = rectangle;
+                        break;
+                    }
+                }
+                if (extended != null)
+                {
+                    open.remove(extended);
+                    extended.height += TILE_SIZE;
+                    next.add(extended);
+                }
+                else
+                {
+                    next.add(run);
+                }
+            }
+            m_rectangles.addAll(open);
+            open = next;
+        }
+        m_rectangles.addAll(open);
+        if (m_rectangles.size() > MAX_RECTANGLES)
+        {
+            Rectangle union = new Rectangle(m_rectangles.get(0));
+            for (Rectangle rectangle : m_rectangles)
+            {
+                union.add(rectangle);
+            }
+            m_rectangles.clear();
+            m_rectangles.add(union);
+        }
+        return m_rectangles;
+    }
+
+    private static int round(double value)
+    {
+        return (int)(value + 0.5);
+    }
+}
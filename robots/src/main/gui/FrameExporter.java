@@ -0,0 +1,292 @@
+package gui;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.ObstacleMap;
+import model.SimulationEngine;
+import model.SimulationReplay;
+import model.WorldSnapshot;
+
+/**
+ * Пишет кадры симуляции последовательностью PNG-файлов frame-000000.png,
+ * frame-000001.png, ... без экрана. Вызывающий поток только копирует
+ * состояние движка в свободный снимок из пула; отрисовка в
+ * {@link OffscreenRenderer} и кодирование PNG идут на пуле фоновых
+ * потоков, у каждого свой рендерер. Пока в работе maxPending кадров,
+ * {@link #capture} пропускает новые, а {@link #awaitCapture} ждёт.
+ */
+public final class FrameExporter implements AutoCloseable
+{
+    public static final int DEFAULT_MAX_PENDING = 16;
+    /**
+     * Качество сжатия PNG: выше - быстрее и крупнее файлы.
+     */
+    private static final float COMPRESSION_QUALITY = 0.75f;
+
+    private static final Histogram renderTime = MetricsRegistry.getDefault().histogram("export.renderTime");
+    private static final Histogram encodeTime = MetricsRegistry.getDefault().histogram("export.encodeTime");
+    private static final Counter droppedFrames = MetricsRegistry.getDefault().counter("export.droppedFrames");
+
+    private final Path m_directory;
+    private final ExecutorService m_workers;
+    private final BlockingQueue<WorldSnapshot> m_free;
+    private final ThreadLocal<OffscreenRenderer> m_renderers;
+    private final AtomicLong m_nextFrame = new AtomicLong();
+    private final AtomicLong m_writtenFrames = new AtomicLong();
+    private final AtomicLong m_droppedFrames = new AtomicLong();
+    private final AtomicReference<IOException> m_failure = new AtomicReference<>();
+
+    public FrameExporter(Path directory, int width, int height) throws IOException
+    {
+        this(directory, width, height, Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_PENDING);
+    }
+
+    public FrameExporter(Path directory, int width, int height, int threads, int maxPending) throws IOException
+    {
+        if (width <= 0 || height <= 0 || threads <= 0 || maxPending <= 0)
+        {
+            throw new IllegalArgumentException("size " + width + "x" + height + ", threads " + threads
+                + ", maxPending " + maxPending);
+        }
+        Files.createDirectories(directory);
+        m_directory = directory;
+        m_free = new ArrayBlockingQueue<>(maxPending);
+        for (int i = 0; i < maxPending; i++)
+        {
+            m_free.add(new WorldSnapshot());
+        }
+        m_renderers = ThreadLocal.withInitial(() -> new OffscreenRenderer(width, height));
+        AtomicInteger threadNumber = new AtomicInteger();
+        m_workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "frame exporter " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ставит текущее состояние движка в очередь на запись, не дожидаясь
+     * свободного места. Возвращает false, если кадр пропущен.
+     */
+    public boolean capture(SimulationEngine engine)
+    {
+        checkOpen();
+        WorldSnapshot snapshot = m_free.poll();
+        if (snapshot == null)
+        {
+            m_droppedFrames.incrementAndGet();
+            droppedFrames.increment();
+            return false;
+        }
+        submit(engine, snapshot);
+        return true;
+    }
+
+    /**
+     * Как {@link #capture}, но ждёт, пока освободится место, и не теряет кадры.
+     */
+    public void awaitCapture(SimulationEngine engine) throws InterruptedException
+    {
+        checkOpen();
+        submit(engine, m_free.take());
+    }
+
+    private void checkOpen()
+    {
+        if (m_workers.isShutdown())
+        {
+            throw new IllegalStateException("Frame exporter is closed");
+        }
+    }
+
+    private void submit(SimulationEngine engine, WorldSnapshot snapshot)
+    {
+        engine.copySnapshot(snapshot);
+        ObstacleMap obstacles = engine.getObstacles();
+        long frame = m_nextFrame.getAndIncrement();
+        try
+        {
+            m_workers.execute(() -> export(frame, obstacles, snapshot));
+        }
+        catch (RejectedExecutionException e)
+        {
+            // экспорт закрыли между проверкой и постановкой кадра
+            m_free.add(snapshot);
+            throw new IllegalStateException("Frame exporter is closed", e);
+        }
+    }
+
+    /**
+     * Ошибка отрисовки или записи, в том числе непроверяемая, запоминается
+     * и выходит из {@link #awaitCompletion}: иначе пул её проглотил бы,
+     * а кадр просто пропал.
+     */
+    private void export(long frame, ObstacleMap obstacles, WorldSnapshot snapshot)
+    {
+        try
+        {
+            BufferedImage image;
+            long started = System.nanoTime();
+            try
+            {
+                image = m_renderers.get().render(obstacles, snapshot);
+            }
+            finally
+            {
+                m_free.add(snapshot);
+            }
+            renderTime.recordSince(started);
+            started = System.nanoTime();
+            writePng(image, m_directory.resolve(String.format("frame-%06d.png", frame)));
+            m_writtenFrames.incrementAndGet();
+            encodeTime.recordSince(started);
+        }
+        catch (IOException e)
+        {
+            m_failure.compareAndSet(null, e);
+        }
+        catch (RuntimeException e)
+        {
+            m_failure.compareAndSet(null, new IOException("Frame " + frame + " could not be exported", e));
+        }
+    }
+
+    private static void writePng(BufferedImage image, Path file) throws IOException
+    {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(file));
+            ImageOutputStream output = new MemoryCacheImageOutputStream(stream))
+        {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed())
+            {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(COMPRESSION_QUALITY);
+            }
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally
+        {
+            writer.dispose();
+        }
+    }
+
+    public long getWrittenFrames()
+    {
+        return m_writtenFrames.get();
+    }
+
+    /**
+     * Сколько кадров {@link #capture} пропустил из-за полной очереди.
+     */
+    public long getDroppedFrames()
+    {
+        return m_droppedFrames.get();
+    }
+
+    /**
+     * Дожидается записи всех поставленных кадров; новые кадры после этого
+     * не принимаются. Если какой-то кадр записать не удалось, бросает
+     * первую ошибку, но только один раз.
+     */
+    public void awaitCompletion() throws IOException
+    {
+        m_workers.shutdown();
+        try
+        {
+            while (!m_workers.awaitTermination(1, TimeUnit.MINUTES))
+            {
+                // ждём, сколько бы ни заняло кодирование
+            }
+        }
+        catch (InterruptedException e)
+        {
+            m_workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        IOException failure = m_failure.getAndSet(null);
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * То же, что {@link #awaitCompletion}.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        awaitCompletion();
+    }
+
+    /**
+     * Повторяет запись {@link SimulationReplay} и сохраняет кадр каждые
+     * everyTicks шагов: FrameExporter &lt;запись&gt; &lt;каталог&gt;
+     * [everyTicks [ширина высота]].
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if (args.length < 2 || args.length == 4 || args.length > 5)
+        {
+            System.err.println("Usage: FrameExporter <recording> <directory> [everyTicks [width height]]");
+            System.exit(2);
+        }
+        if (System.getProperty("java.awt.headless") == null)
+        {
+            System.setProperty("java.awt.headless", "true");
+        }
+        long everyTicks = args.length > 2 ? Long.parseLong(args[2]) : 10;
+        int width = args.length > 4 ? Integer.parseInt(args[3]) : 800;
+        int height = args.length > 4 ? Integer.parseInt(args[4]) : 600;
+        if (everyTicks <= 0)
+        {
+            System.err.println("everyTicks must be positive: " + everyTicks);
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        try (SimulationReplay replay = new SimulationReplay(Paths.get(args[0]));
+            FrameExporter exporter = new FrameExporter(Paths.get(args[1]), width, height))
+        {
+            for (long tick = replay.getFirstTick(); ; tick += everyTicks)
+            {
+                replay.runTo(tick);
+                exporter.awaitCapture(replay.getEngine());
+                if (tick >= replay.getLastTick())
+                {
+                    break;
+                }
+            }
+            exporter.awaitCompletion();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d frames in %.2f s (%.0f frames/s)%n", exporter.getWrittenFrames(), seconds,
+                exporter.getWrittenFrames() / Math.max(seconds, 1e-9));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package gui;
+
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import metrics.Counter;
+import metrics.MetricsRegistry;
+
+/**
+ * Решает, когда просить EDT нарисовать новый кадр. Кадры идут с заданной
+ * частотой, и в очереди EDT их никогда не больше одного: если предыдущий
+ * кадр ещё не нарисован, очередной пропускается. Обязательные кадры
+ * (например, последний перед остановкой мира) не теряются, а склеиваются
+ * в одну повторную перерисовку.
+ */
+final class FramePacer
+{
+    static final int DEFAULT_FPS = 60;
+    static final String FPS_PROPERTY = "robots.fps";
+
+    private static final int IDLE = 0;
+    private static final int PENDING = 1;
+    private static final int RERUN = 2;
+    private static final Counter droppedFrames = MetricsRegistry.getDefault().counter("render.droppedFrames");
+
+    private final AtomicInteger m_state = new AtomicInteger(IDLE);
+    private final AtomicLong m_droppedFrames = new AtomicLong();
+    private volatile long m_framePeriod;
+    private long m_nextFrame;
+
+    FramePacer()
+    {
+        this(defaultFps());
+    }
+
+    FramePacer(int fps)
+    {
+        setTargetFps(fps);
+    }
+
+    /**
+     * Частота из свойства robots.fps, иначе частота обновления экрана,
+     * иначе DEFAULT_FPS.
+     */
+    static int defaultFps()
+    {
+        Integer fps = Integer.getInteger(FPS_PROPERTY);
+        if (fps != null && fps > 0)
+        {
+            return fps;
+        }
+        if (!GraphicsEnvironment.isHeadless())
+        {
+            DisplayMode mode = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode();
+            if (mode.getRefreshRate() != DisplayMode.REFRESH_RATE_UNKNOWN)
+            {
+                return mode.getRefreshRate();
+            }
+        }
+        return DEFAULT_FPS;
+    }
+
+    void setTargetFps(int fps)
+    {
+        if (fps <= 0)
+        {
+            throw new IllegalArgumentException("fps must be positive: " + fps);
+        }
+        m_framePeriod = 1_000_000_000L / fps;
+    }
+
+    int getTargetFps()
+    {
+        return (int)(1_000_000_000L / m_framePeriod);
+    }
+
+    long getDroppedFrames()
+    {
+        return m_droppedFrames.get();
+    }
+
+    /**
+     * Вызывается из потока модели. Возвращает true, если подошло время кадра
+     * и его нужно поставить в очередь EDT. Если предыдущий кадр ещё
+     * в очереди, этот кадр пропускается.
+     */
+    boolean tryBeginFrame(long now)
+    {
+        if (now < m_nextFrame)
+        {
+            return false;
+        }
+        m_nextFrame += m_framePeriod;
+        if (m_nextFrame <= now)
+        {
+            // отстали больше чем на кадр: не наверстываем, а начинаем отсчёт заново
+            m_nextFrame = now + m_framePeriod;
+        }
+        if (m_state.compareAndSet(IDLE, PENDING))
+        {
+            return true;
+        }
+        m_droppedFrames.incrementAndGet();
+        droppedFrames.increment();
+        return false;
+    }
+
+    /**
+     * Кадр, который нельзя пропустить. Возвращает true, если его нужно
+     * поставить в очередь EDT; если кадр уже в очереди, он будет повторён
+     * после завершения.
+     */
+    boolean requestFrame()
+    {
+        while (true)
+        {
+            int state = m_state.get();
+            if (state == IDLE && m_state.compareAndSet(IDLE, PENDING))
+            {
+                return true;
+            }
+            if (state == RERUN || (state == PENDING && m_state.compareAndSet(PENDING, RERUN)))
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Вызывается в EDT после отрисовки кадра. Возвращает true, если
+     * за это время пришёл обязательный кадр и его нужно нарисовать снова.
+     */
+    boolean finishFrame()
+    {
+        while (true)
+        {
+            if (m_state.compareAndSet(RERUN, PENDING))
+            {
+                return true;
+            }
+            if (m_state.compareAndSet(PENDING, IDLE))
+            {
+                return false;
+            }
+        }
+    }
+}
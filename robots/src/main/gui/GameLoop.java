@@ -0,0 +1,195 @@
+package gui;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import log.Logger;
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+
+/**
+ * Общий для всех игровых окон игровой цикл на одном потоке. Пока хотя бы
+ * один не поставленный на паузу участник сообщает, что ему есть что делать,
+ * цикл вызывает участников каждые {@link #TICK_PERIOD} мс; когда все
+ * простаивают, цикл останавливается до следующего {@link Registration#wake()}.
+ */
+public final class GameLoop
+{
+    public static final long TICK_PERIOD = 10;
+
+    public interface Participant
+    {
+        /**
+         * Возвращает true, если участнику нужны следующие такты.
+         */
+        boolean onTick(long nowNanos);
+    }
+
+    public final class Registration
+    {
+        private final Participant m_participant;
+        private volatile boolean m_paused;
+        private volatile boolean m_cancelled;
+        /**
+         * Последний такт участника кончился исключением; меняется только
+         * в потоке цикла.
+         */
+        private boolean m_failed;
+
+        private Registration(Participant participant)
+        {
+            m_participant = participant;
+        }
+
+        public void wake()
+        {
+            if (!m_cancelled)
+            {
+                GameLoop.this.wake();
+            }
+        }
+
+        public void setPaused(boolean paused)
+        {
+            m_paused = paused;
+            if (!paused)
+            {
+                wake();
+            }
+        }
+
+        public boolean isPaused()
+        {
+            return m_paused;
+        }
+
+        public void cancel()
+        {
+            m_cancelled = true;
+            m_participants.remove(this);
+        }
+    }
+
+    private static final GameLoop shared = new GameLoop("game loop");
+    private static final Histogram tickTime = MetricsRegistry.getDefault().histogram("gameloop.tickTime");
+    private static final Histogram tickLag = MetricsRegistry.getDefault().histogram("gameloop.tickLag");
+    private static final Counter ticks = MetricsRegistry.getDefault().counter("gameloop.ticks");
+
+    private final ScheduledExecutorService m_executor;
+    private final CopyOnWriteArrayList<Registration> m_participants = new CopyOnWriteArrayList<>();
+    private ScheduledFuture<?> m_future;
+    private volatile boolean m_wakeRequested;
+    /**
+     * Когда по расписанию должен начаться следующий такт; 0, пока цикл стоит.
+     * Меняется только в потоке цикла.
+     */
+    private long m_scheduledTime;
+
+    private GameLoop(String threadName)
+    {
+        m_executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static GameLoop getShared()
+    {
+        return shared;
+    }
+
+    public Registration register(Participant participant)
+    {
+        Registration registration = new Registration(participant);
+        m_participants.add(registration);
+        wake();
+        return registration;
+    }
+
+    public int participantCount()
+    {
+        return m_participants.size();
+    }
+
+    private synchronized void wake()
+    {
+        m_wakeRequested = true;
+        if (m_future == null)
+        {
+            m_future = m_executor.scheduleAtFixedRate(this::runTick, 0, TICK_PERIOD, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Исключение, вылетевшее из задачи scheduleAtFixedRate, молча отменяет
+     * её, и все окна встают; поэтому такт никогда не выпускает исключение.
+     */
+    private void runTick()
+    {
+        try
+        {
+            tick();
+        }
+        catch (RuntimeException e)
+        {
+            Logger.error("Game loop tick failed: {}", e);
+        }
+    }
+
+    private void tick()
+    {
+        m_wakeRequested = false;
+        long now = System.nanoTime();
+        if (m_scheduledTime != 0)
+        {
+            tickLag.record(now - m_scheduledTime);
+        }
+        else
+        {
+            m_scheduledTime = now;
+        }
+        m_scheduledTime += TimeUnit.MILLISECONDS.toNanos(TICK_PERIOD);
+        ticks.increment();
+        boolean active = false;
+        for (Registration registration : m_participants)
+        {
+            if (registration.m_paused || registration.m_cancelled)
+            {
+                continue;
+            }
+            try
+            {
+                active |= registration.m_participant.onTick(now);
+                registration.m_failed = false;
+            }
+            catch (RuntimeException e)
+            {
+                // участник остаётся активным: сбой мог быть разовым, а повторяющийся
+                // пишется в лог один раз, пока участник снова не отработает такт
+                active = true;
+                if (!registration.m_failed)
+                {
+                    registration.m_failed = true;
+                    Logger.error("Game loop participant failed: {}", e);
+                }
+            }
+        }
+        if (!active)
+        {
+            synchronized (this)
+            {
+                if (!m_wakeRequested && m_future != null)
+                {
+                    m_future.cancel(false);
+                    m_future = null;
+                    m_scheduledTime = 0;
+                }
+            }
+        }
+        tickTime.recordSince(now);
+    }
+}
@@ -1,210 +1,284 @@
 package gui;
 
-import java.awt.Color;
 import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.awt.geom.AffineTransform;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+
+import metrics.Counter;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+import model.ObstacleMap;
+import model.RobotWorld;
+import model.SimulationEngine;
+import model.SimulationRecorder;
+import model.WorldCheckpoint;
+import model.WorldSnapshot;
 
 public class GameVisualizer extends JPanel
 {
-    private final Timer m_timer = initTimer();
+    private static final double PICK_DISTANCE = 20;
+    private static final Histogram modelUpdateTime = MetricsRegistry.getDefault().histogram("model.updateTime");
+    private static final Counter modelTicks = MetricsRegistry.getDefault().counter("model.ticks");
+    private static final Histogram frameTime = MetricsRegistry.getDefault().histogram("render.frameTime");
+    private static final Histogram paintTime = MetricsRegistry.getDefault().histogram("render.paintTime");
+
+    private final SimulationEngine m_engine = new SimulationEngine(createWorld());
+    private final GameLoop.Registration m_registration;
+    private volatile long m_lastUpdateTime;
+    private final FramePacer m_pacer = new FramePacer();
+    private volatile int m_selectedRobot = -1;
+    private final SceneRenderer m_scene = new SceneRenderer();
+    private WorldSnapshot m_snapshot;
+    private final DirtyRegions m_dirtyRegions = new DirtyRegions();
     
-    private static Timer initTimer() 
+    private static RobotWorld createWorld()
     {
-        Timer timer = new Timer("events generator", true);
-        return timer;
+        RobotWorld world = new RobotWorld();
+        world.addRobot(100, 100, 0, 150, 100);
+        return world;
     }
-    
-    private volatile double m_robotPositionX = 100;
-    private volatile double m_robotPositionY = 100; 
-    private volatile double m_robotDirection = 0; 
 
-    private volatile int m_targetPositionX = 150;
-    private volatile int m_targetPositionY = 100;
-    
-    private static final double maxVelocity = 0.1; 
-    private static final double maxAngularVelocity = 0.001; 
-    
     public GameVisualizer() 
     {
-        m_timer.schedule(new TimerTask()
-        {
-            @Override
-            public void run()
-            {
-                onRedrawEvent();
-            }
-        }, 0, 50);
-        m_timer.schedule(new TimerTask()
-        {
-            @Override
-            public void run()
-            {
-                onModelUpdateEvent();
-            }
-        }, 0, 10);
+        m_registration = GameLoop.getShared().register(this::onTick);
         addMouseListener(new MouseAdapter()
         {
             @Override
             public void mouseClicked(MouseEvent e)
             {
+                if (SwingUtilities.isRightMouseButton(e))
+                {
+                    selectRobot(e.getPoint());
+                    repaint();
+                    return;
+                }
                 setTargetPosition(e.getPoint());
+                m_registration.wake();
                 repaint();
             }
         });
         setDoubleBuffered(true);
     }
 
-    protected void setTargetPosition(Point p)
+    /**
+     * Выбирает ближайшего к точке робота; дальнейшие цели задаются только ему.
+     * Щелчок вдали от роботов снимает выбор.
+     */
+    protected void selectRobot(Point p)
     {
-        m_targetPositionX = p.x;
-        m_targetPositionY = p.y;
-    }
-    
-    protected void onRedrawEvent()
-    {
-        EventQueue.invokeLater(this::repaint);
+        m_selectedRobot = m_engine.findNearestRobot(p.x, p.y, PICK_DISTANCE);
     }
 
-    private static double distance(double x1, double y1, double x2, double y2)
-    {
-        double diffX = x1 - x2;
-        double diffY = y1 - y2;
-        return Math.sqrt(diffX * diffX + diffY * diffY);
-    }
-    
-    private static double angleTo(double fromX, double fromY, double toX, double toY)
+    protected void setTargetPosition(Point p)
     {
-        double diffX = toX - fromX;
-        double diffY = toY - fromY;
-        
-        return asNormalizedRadians(Math.atan2(diffY, diffX));
+        int selectedRobot = m_selectedRobot;
+        if (selectedRobot >= 0)
+        {
+            m_engine.setTarget(selectedRobot, p.x, p.y);
+        }
+        else
+        {
+            m_engine.setTarget(p.x, p.y);
+        }
     }
     
-    protected void onModelUpdateEvent()
+    protected void onRedrawEvent()
     {
-        double distance = distance(m_targetPositionX, m_targetPositionY, 
-            m_robotPositionX, m_robotPositionY);
-        if (distance < 0.5)
+        if (m_pacer.requestFrame())
         {
-            return;
+            EventQueue.invokeLater(this::redraw);
         }
-        double velocity = maxVelocity;
-        double angleToTarget = angleTo(m_robotPositionX, m_robotPositionY, m_targetPositionX, m_targetPositionY);
-        double angularVelocity = 0;
-        if (angleToTarget > m_robotDirection)
+    }
+
+    /**
+     * Забирает свежий снимок и перерисовывает только те места, где
+     * что-то сдвинулось хотя бы на пиксель. Вызывается в EDT.
+     */
+    private void redraw()
+    {
+        long started = System.nanoTime();
+        try
         {
-            angularVelocity = maxAngularVelocity;
+            m_snapshot = m_engine.getSnapshots().acquire();
+            List<Rectangle> dirty = m_dirtyRegions.collect(m_snapshot, m_selectedRobot, getWidth(), getHeight());
+            if (dirty == null)
+            {
+                repaint();
+                return;
+            }
+            for (Rectangle rectangle : dirty)
+            {
+                paintImmediately(rectangle);
+            }
+            if (!dirty.isEmpty())
+            {
+                Toolkit.getDefaultToolkit().sync();
+            }
         }
-        if (angleToTarget < m_robotDirection)
+        finally
         {
-            angularVelocity = -maxAngularVelocity;
+            frameTime.recordSince(started);
+            if (m_pacer.finishFrame())
+            {
+                EventQueue.invokeLater(this::redraw);
+            }
         }
-        
-        moveRobot(velocity, angularVelocity, 10);
     }
-    
-    private static double applyLimits(double value, double min, double max)
+
+    private boolean onTick(long now)
     {
-        if (value < min)
-            return min;
-        if (value > max)
-            return max;
-        return value;
-    }
-    
-    private void moveRobot(double velocity, double angularVelocity, double duration)
-    {
-        velocity = applyLimits(velocity, 0, maxVelocity);
-        angularVelocity = applyLimits(angularVelocity, -maxAngularVelocity, maxAngularVelocity);
-        double newX = m_robotPositionX + velocity / angularVelocity * 
-            (Math.sin(m_robotDirection  + angularVelocity * duration) -
-                Math.sin(m_robotDirection));
-        if (!Double.isFinite(newX))
+        boolean moving = onModelUpdateEvent(now);
+        if (!moving)
         {
-            newX = m_robotPositionX + velocity * duration * Math.cos(m_robotDirection);
+            m_lastUpdateTime = 0;
+            onRedrawEvent();
         }
-        double newY = m_robotPositionY - velocity / angularVelocity * 
-            (Math.cos(m_robotDirection  + angularVelocity * duration) -
-                Math.cos(m_robotDirection));
-        if (!Double.isFinite(newY))
+        else if (m_pacer.tryBeginFrame(now))
         {
-            newY = m_robotPositionY + velocity * duration * Math.sin(m_robotDirection);
+            EventQueue.invokeLater(this::redraw);
         }
-        m_robotPositionX = newX;
-        m_robotPositionY = newY;
-        double newDirection = asNormalizedRadians(m_robotDirection + angularVelocity * duration); 
-        m_robotDirection = newDirection;
+        return moving;
     }
 
-    private static double asNormalizedRadians(double angle)
+    protected boolean onModelUpdateEvent(long now)
     {
-        while (angle < 0)
+        if (m_lastUpdateTime == 0)
         {
-            angle += 2*Math.PI;
+            m_engine.resetClock();
+            m_lastUpdateTime = now;
         }
-        while (angle >= 2*Math.PI)
+        double elapsedMillis = (now - m_lastUpdateTime) / 1_000_000.0;
+        m_lastUpdateTime = now;
+        long started = System.nanoTime();
+        modelTicks.add(m_engine.advance(elapsedMillis));
+        modelUpdateTime.recordSince(started);
+        return !m_engine.isIdle();
+    }
+
+    /**
+     * Пока окно скрыто или свёрнуто, модель не обновляется и не перерисовывается.
+     */
+    public void setPaused(boolean paused)
+    {
+        m_lastUpdateTime = 0;
+        m_registration.setPaused(paused);
+    }
+
+    public void stop()
+    {
+        m_registration.cancel();
+        stopRecording();
+    }
+
+    /**
+     * Начинает записывать прогон в файл; предыдущая запись закрывается.
+     * Повторить запись можно через {@link model.SimulationReplay}.
+     */
+    public void startRecording(Path file) throws IOException
+    {
+        stopRecording();
+        m_engine.setRecorder(new SimulationRecorder(file, m_engine.getTimeStep(),
+            SimulationRecorder.DEFAULT_FRAME_INTERVAL, SimulationRecorder.DEFAULT_KEYFRAME_INTERVAL));
+    }
+
+    public void stopRecording()
+    {
+        SimulationRecorder recorder = m_engine.getRecorder();
+        if (recorder != null)
         {
-            angle -= 2*Math.PI;
+            m_engine.setRecorder(null);
+            recorder.close();
         }
-        return angle;
     }
-    
-    private static int round(double value)
+
+    public boolean isRecording()
     {
-        return (int)(value + 0.5);
+        return m_engine.getRecorder() != null;
     }
-    
-    @Override
-    public void paint(Graphics g)
+
+    /**
+     * Частота кадров, с которой панель перерисовывается, пока роботы движутся.
+     */
+    public void setTargetFps(int fps)
     {
-        super.paint(g);
-        Graphics2D g2d = (Graphics2D)g; 
-        drawRobot(g2d, round(m_robotPositionX), round(m_robotPositionY), m_robotDirection);
-        drawTarget(g2d, m_targetPositionX, m_targetPositionY);
+        m_pacer.setTargetFps(fps);
     }
-    
-    private static void fillOval(Graphics g, int centerX, int centerY, int diam1, int diam2)
+
+    public int getTargetFps()
     {
-        g.fillOval(centerX - diam1 / 2, centerY - diam2 / 2, diam1, diam2);
+        return m_pacer.getTargetFps();
     }
-    
-    private static void drawOval(Graphics g, int centerX, int centerY, int diam1, int diam2)
+
+    /**
+     * Сколько кадров пропущено из-за того, что EDT не успевал рисовать.
+     */
+    public long getDroppedFrames()
     {
-        g.drawOval(centerX - diam1 / 2, centerY - diam2 / 2, diam1, diam2);
+        return m_pacer.getDroppedFrames();
     }
-    
-    private void drawRobot(Graphics2D g, int x, int y, double direction)
-    {
-        int robotCenterX = round(m_robotPositionX); 
-        int robotCenterY = round(m_robotPositionY);
-        AffineTransform t = AffineTransform.getRotateInstance(direction, robotCenterX, robotCenterY); 
-        g.setTransform(t);
-        g.setColor(Color.MAGENTA);
-        fillOval(g, robotCenterX, robotCenterY, 30, 10);
-        g.setColor(Color.BLACK);
-        drawOval(g, robotCenterX, robotCenterY, 30, 10);
-        g.setColor(Color.WHITE);
-        fillOval(g, robotCenterX  + 10, robotCenterY, 5, 5);
-        g.setColor(Color.BLACK);
-        drawOval(g, robotCenterX  + 10, robotCenterY, 5, 5);
+
+    public SimulationEngine getEngine()
+    {
+        return m_engine;
+    }
+
+    public WorldCheckpoint captureWorld()
+    {
+        return WorldCheckpoint.capture(m_engine);
+    }
+
+    /**
+     * Заменяет мир сохранённым. Идущая запись прогона прекращается:
+     * подмена мира в ней не отражается.
+     */
+    public void restoreWorld(WorldCheckpoint world)
+    {
+        stopRecording();
+        world.restore(m_engine);
+        m_selectedRobot = -1;
+        m_lastUpdateTime = 0;
+        m_registration.wake();
+        repaint();
+    }
+
+    public void setObstacles(ObstacleMap obstacles)
+    {
+        m_engine.setObstacles(obstacles);
+        m_registration.wake();
+        repaint();
     }
     
-    private void drawTarget(Graphics2D g, int x, int y)
-    {
-        AffineTransform t = AffineTransform.getRotateInstance(0, 0, 0); 
-        g.setTransform(t);
-        g.setColor(Color.GREEN);
-        fillOval(g, x, y, 5, 5);
-        g.setColor(Color.BLACK);
-        drawOval(g, x, y, 5, 5);
+    @Override
+    public void paint(Graphics g)
+    {
+        long started = System.nanoTime();
+        super.paint(g);
+        m_scene.paint((Graphics2D)g, m_engine.getObstacles(), getSnapshot(), m_selectedRobot, getWidth(), getHeight());
+        paintTime.recordSince(started);
+    }
+
+    /**
+     * Снимок, по которому рисуется панель. Меняется только в {@link #redraw},
+     * чтобы перерисовка по грязным областям и полная перерисовка показывали
+     * одно и то же состояние.
+     */
+    private WorldSnapshot getSnapshot()
+    {
+        if (m_snapshot == null)
+        {
+            m_snapshot = m_engine.getSnapshots().acquire();
+        }
+        return m_snapshot;
     }
 }
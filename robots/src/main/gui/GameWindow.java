@@ -1,7 +1,11 @@
 package gui;
 
 import java.awt.BorderLayout;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import javax.swing.JPanel;
+import javax.swing.event.InternalFrameAdapter;
+import javax.swing.event.InternalFrameEvent;
 
 
 public class GameWindow extends AbstractWindow
@@ -22,11 +26,69 @@ public class GameWindow extends AbstractWindow
         panel.add(m_visualizer, BorderLayout.CENTER);
         getContentPane().add(panel);
         pack();
+
+        addInternalFrameListener(new InternalFrameAdapter() {
+            @Override
+            public void internalFrameIconified(InternalFrameEvent e) {
+                m_visualizer.setPaused(true);
+            }
+
+            @Override
+            public void internalFrameDeiconified(InternalFrameEvent e) {
+                updatePaused();
+            }
+
+            @Override
+            public void internalFrameClosed(InternalFrameEvent e) {
+                m_visualizer.stop();
+            }
+        });
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentHidden(ComponentEvent e) {
+                m_visualizer.setPaused(true);
+            }
+
+            @Override
+            public void componentShown(ComponentEvent e) {
+                updatePaused();
+            }
+        });
+    }
+
+    /**
+     * Модель идёт, только пока окно видно и не свёрнуто.
+     */
+    private void updatePaused() {
+        m_visualizer.setPaused(!isVisible() || isIcon());
+    }
+
+    public GameVisualizer getVisualizer() {
+        return m_visualizer;
+    }
+
+    @Override
+    WindowState.Kind getKind() {
+        return WindowState.Kind.GAME;
+    }
+
+    @Override
+    public void saveWindow(WindowState state) {
+        super.saveWindow(state);
+        state.setWorld(m_visualizer.captureWorld());
+    }
+
+    @Override
+    public void loadWindow(WindowState state) {
+        super.loadWindow(state);
+        if (state.getWorld() != null) {
+            m_visualizer.restoreWorld(state.getWorld());
+        }
     }
 
     @Override
     public void dispose() {
-//        m_visualizer.stopTimer();
+        m_visualizer.stop();
 
         super.dispose();
     }
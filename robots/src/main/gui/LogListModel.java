@@ -0,0 +1,137 @@
+package gui;
+
+import java.util.Collections;
+import java.util.List;
+import javax.swing.AbstractListModel;
+import log.LogEntry;
+import log.LogJournal;
+import log.LogJournalReader;
+import log.LogWindowSource;
+
+/**
+ * Модель списка, которая не хранит записи лога сама, а подгружает из источника
+ * страницу вокруг запрошенной строки. JList запрашивает только видимые строки,
+ * поэтому стоимость отрисовки не зависит от размера лога.
+ *
+ * Если задан журнал, строки до самой старой записи источника читаются из него,
+ * и номера строк считаются в нумерации журнала.
+ */
+public class LogListModel extends AbstractListModel<LogEntry> {
+    private static final int PAGE_SIZE = 256;
+
+    private final LogWindowSource m_logSource;
+    private final LogJournalReader m_journal;
+    private final long m_sequenceOffset;
+    private long m_firstSequence;
+    private long m_nextSequence;
+
+    private long m_pageStart = -1;
+    private long m_pageOffset;
+    private List<LogEntry> m_page;
+
+    public LogListModel(LogWindowSource logSource) {
+        this(logSource, null);
+    }
+
+    public LogListModel(LogWindowSource logSource, LogJournal journal) {
+        m_logSource = logSource;
+        m_journal = journal == null ? null : journal.getReader();
+        m_sequenceOffset = journal == null ? 0 : journal.getSequenceOffset();
+        m_firstSequence = firstSequence();
+        m_nextSequence = m_firstSequence;
+        refresh();
+    }
+
+    private long firstSequence() {
+        long first = m_logSource.getFirstSequence() + m_sequenceOffset;
+        if (m_journal != null) {
+            long journalFirst = m_journal.getFirstSequence();
+            if (journalFirst >= 0) {
+                first = Math.min(first, journalFirst);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Добавляет в модель записи, появившиеся с прошлого вызова, и убирает
+     * вытесненные. Вызывается на EDT.
+     */
+    public void refresh() {
+        long next = m_logSource.getNextSequence() + m_sequenceOffset;
+        // JList считает строки в int: в журнале их может быть больше,
+        // тогда видны только последние Integer.MAX_VALUE
+        long first = Math.max(firstSequence(), next - Integer.MAX_VALUE);
+        m_page = null;
+
+        if (first >= m_nextSequence) {
+            int oldSize = getSize();
+            m_firstSequence = first;
+            m_nextSequence = first;
+            if (oldSize > 0) {
+                fireIntervalRemoved(this, 0, oldSize - 1);
+            }
+        } else if (first > m_firstSequence) {
+            int removed = (int) (first - m_firstSequence);
+            m_firstSequence = first;
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+
+        if (next > m_nextSequence) {
+            int oldSize = getSize();
+            m_nextSequence = next;
+            fireIntervalAdded(this, oldSize, getSize() - 1);
+        }
+    }
+
+    public long getFirstSequence() {
+        return m_firstSequence;
+    }
+
+    @Override
+    public int getSize() {
+        return (int) (m_nextSequence - m_firstSequence);
+    }
+
+    @Override
+    public LogEntry getElementAt(int index) {
+        long sequence = m_firstSequence + index;
+        if (m_page == null || sequence < m_pageStart || sequence >= m_pageStart + PAGE_SIZE) {
+            loadPage(sequence);
+        }
+        return findInPage(sequence);
+    }
+
+    private void loadPage(long sequence) {
+        long sourceFirst = m_logSource.getFirstSequence() + m_sequenceOffset;
+        m_pageStart = Math.max(m_firstSequence, sequence - PAGE_SIZE / 2);
+        if (sequence >= sourceFirst) {
+            m_pageStart = Math.max(m_pageStart, sourceFirst);
+            m_pageOffset = m_sequenceOffset;
+            m_page = m_logSource.rangeFromSequence(m_pageStart - m_sequenceOffset, PAGE_SIZE);
+        } else if (m_journal != null) {
+            m_pageOffset = 0;
+            m_page = m_journal.read(m_pageStart, (int) Math.min(PAGE_SIZE, sourceFirst - m_pageStart));
+        } else {
+            m_page = Collections.emptyList();
+        }
+    }
+
+    private LogEntry findInPage(long sequence) {
+        // вытесненные записи могут быть пропущены, поэтому ищем по номеру
+        int low = 0;
+        int high = m_page.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleSequence = m_page.get(middle).getSequence() + m_pageOffset;
+            if (middleSequence < sequence) {
+                low = middle + 1;
+            } else if (middleSequence > sequence) {
+                high = middle - 1;
+            } else {
+                return m_page.get(middle);
+            }
+        }
+        return null;
+    }
+}
@@ -1,20 +1,34 @@
 package gui;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
 import java.awt.EventQueue;
-import java.awt.TextArea;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.BoundedRangeModel;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
 import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 import log.LogChangeListener;
 import log.LogEntry;
+import log.LogJournal;
+import log.LogLevel;
 import log.LogWindowSource;
 
 
 public class LogWindow extends AbstractWindow implements LogChangeListener
 {
     private final LogWindowSource m_logSource;
-    private final TextArea m_logContent;
+    private final LogListModel m_logModel;
+    private final JList<LogEntry> m_logContent;
+    private final JScrollPane m_scrollPane;
+    private final AtomicBoolean m_updateQueued = new AtomicBoolean();
 
     public LogWindow(LogWindowSource logSource) {
+        this(logSource, null);
+    }
+
+    public LogWindow(LogWindowSource logSource, LogJournal journal) {
         super();
 
         setTitle("Окно логов");
@@ -24,28 +38,60 @@ public class LogWindow extends AbstractWindow implements LogChangeListener
         setIconifiable(true);
 
         m_logSource = logSource;
+        m_logModel = new LogListModel(logSource, journal);
+        m_logContent = new JList<>(m_logModel);
+        m_logContent.setPrototypeCellValue(new LogEntry(LogLevel.Debug, "The Protocol Is Working"));
+        m_logContent.setCellRenderer(new LogEntryRenderer());
+        m_scrollPane = new JScrollPane(m_logContent);
+        m_scrollPane.setSize(200, 500);
         m_logSource.registerListener(this);
-        m_logContent = new TextArea("");
-        m_logContent.setSize(200, 500);
 
         JPanel panel = new JPanel(new BorderLayout());
-        panel.add(m_logContent, BorderLayout.CENTER);
+        panel.add(m_scrollPane, BorderLayout.CENTER);
         getContentPane().add(panel);
         pack();
         updateLogContent();
     }
 
-    private void updateLogContent() {
-        StringBuilder content = new StringBuilder();
-        for (LogEntry entry : m_logSource.all()) {
-            content.append(entry.getMessage()).append("\n");
+    void updateLogContent() {
+        m_updateQueued.set(false);
+        BoundedRangeModel scroll = m_scrollPane.getVerticalScrollBar().getModel();
+        boolean atBottom = scroll.getValue() + scroll.getExtent() >= scroll.getMaximum();
+
+        m_logModel.refresh();
+
+        int size = m_logModel.getSize();
+        if (atBottom && size > 0) {
+            m_logContent.ensureIndexIsVisible(size - 1);
         }
-        m_logContent.setText(content.toString());
-        m_logContent.invalidate();
+        m_logContent.repaint();
+    }
+
+    @Override
+    WindowState.Kind getKind() {
+        return WindowState.Kind.LOG;
+    }
+
+    @Override
+    public void dispose() {
+        m_logSource.unregisterListener(this);
+
+        super.dispose();
     }
 
     @Override
     public void onLogChanged() {
-        EventQueue.invokeLater(this::updateLogContent);
+        if (m_updateQueued.compareAndSet(false, true)) {
+            EventQueue.invokeLater(this::updateLogContent);
+        }
+    }
+
+    private static class LogEntryRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                      boolean isSelected, boolean cellHasFocus) {
+            String text = value instanceof LogEntry ? ((LogEntry) value).getMessage() : "";
+            return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+        }
     }
 }
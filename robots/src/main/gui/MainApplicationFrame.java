@@ -3,19 +3,35 @@ package gui;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import javax.swing.*;
 import log.Logger;
+import model.ObstacleMap;
+import model.Scenario;
+import model.WorldCheckpoint;
 
 public class MainApplicationFrame extends JFrame{
     Locale currentLocale = new Locale("ru", "RU");
     ResourceBundle messages = ResourceBundle.getBundle("resources", currentLocale);
 
     private JDesktopPane desktopPane;
-
+    private boolean exiting;
 
     public MainApplicationFrame() {
+        this(null);
+    }
+
+    /**
+     * checkpoint - сохранённые окна и миры; если null, открываются окна по умолчанию.
+     */
+    MainApplicationFrame(Checkpoint checkpoint) {
         Integer indent = 50;
         Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 
@@ -24,9 +40,11 @@ public class MainApplicationFrame extends JFrame{
 
         setBounds(indent, indent, indentedWidth, indentedHeight);
 
-        setContentPane(createDesktopPane());
+        setContentPane(createDesktopPane(checkpoint));
         setJMenuBar(generateMenuBar());
-        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        // выход только через exitApplication: сохранение идёт в фоне, и
+        // программа не должна завершиться раньше, чем оно закончится
+        setDefaultCloseOperation(DO_NOTHING_ON_CLOSE);
 
         addWindowListener(new WindowAdapter() {
             @Override
@@ -37,14 +55,19 @@ public class MainApplicationFrame extends JFrame{
 
 //        setUpClosingLogic();
     }
-    private JDesktopPane createDesktopPane() {
+    private JDesktopPane createDesktopPane(Checkpoint checkpoint) {
         desktopPane = new JDesktopPane();
 
-        addWindow(createLogWindow(), 300, 800);
-        addWindow(new GameWindow(), 400, 400);
+        if (checkpoint == null) {
+            addWindow(createLogWindow(), 300, 800);
+            addWindow(new GameWindow(), 400, 400);
+            return desktopPane;
+        }
 
-        for (JInternalFrame frame : desktopPane.getAllFrames()) {
-            ((AbstractWindow) frame).loadWindow();
+        for (WindowState state : checkpoint.getWindows()) {
+            AbstractWindow window = createWindow(state.getKind());
+            addWindow(window, state.getBounds().width, state.getBounds().height);
+            window.loadWindow(state);
         }
 
         return desktopPane;
@@ -52,8 +75,19 @@ public class MainApplicationFrame extends JFrame{
 
 
 
+    private AbstractWindow createWindow(WindowState.Kind kind) {
+        switch (kind) {
+            case GAME:
+                return new GameWindow();
+            case METRICS:
+                return new MetricsWindow();
+            default:
+                return createLogWindow();
+        }
+    }
+
     protected LogWindow createLogWindow() {
-        LogWindow logWindow = new LogWindow(Logger.getDefaultLogSource());
+        LogWindow logWindow = new LogWindow(Logger.getDefaultLogSource(), Logger.getJournal());
         Logger.debug(messages.getString("ProtocolIsWorking"));
         return logWindow;
     }
@@ -88,10 +122,26 @@ public class MainApplicationFrame extends JFrame{
 
 
         menu.add(createMenuItem(messages.getString("LogsWindow"), KeyEvent.VK_L, KeyStroke.getKeyStroke(KeyEvent.VK_L, ActionEvent.ALT_MASK), (event) -> {
-            LogWindow window = new LogWindow(Logger.getDefaultLogSource());
+            LogWindow window = new LogWindow(Logger.getDefaultLogSource(), Logger.getJournal());
             addWindow(window, 150, 350);
         }));
+
+        menu.add(createMenuItem(messages.getString("MetricsWindow"), KeyEvent.VK_M, KeyStroke.getKeyStroke(KeyEvent.VK_M, ActionEvent.ALT_MASK), (event) -> {
+            addWindow(new MetricsWindow(), 640, 480);
+        }));
         
+        menu.add(createMenuItem(messages.getString("LoadObstacles"), KeyEvent.VK_O, KeyStroke.getKeyStroke(KeyEvent.VK_O, ActionEvent.ALT_MASK), (event) -> {
+            loadObstacles();
+        }));
+
+        menu.add(createMenuItem(messages.getString("LoadScenario"), KeyEvent.VK_C, KeyStroke.getKeyStroke(KeyEvent.VK_C, ActionEvent.ALT_MASK), (event) -> {
+            loadScenario();
+        }));
+
+        menu.add(createMenuItem(messages.getString("Recording"), KeyEvent.VK_E, KeyStroke.getKeyStroke(KeyEvent.VK_E, ActionEvent.ALT_MASK), (event) -> {
+            toggleRecording();
+        }));
+
         menu.add(createMenuItem(messages.getString("Save"), KeyEvent.VK_S, KeyStroke.getKeyStroke(KeyEvent.VK_S, ActionEvent.CTRL_MASK), (event) -> {
             callCloseDialog();
         }));
@@ -100,10 +150,118 @@ public class MainApplicationFrame extends JFrame{
 
         return menu;
     }
-    private void callCloseDialog(){
+    private GameWindow findGameWindow() {
+        JInternalFrame selected = desktopPane.getSelectedFrame();
+        if (selected instanceof GameWindow) {
+            return (GameWindow) selected;
+        }
+        for (JInternalFrame frame : desktopPane.getAllFrames()) {
+            if (frame instanceof GameWindow) {
+                return (GameWindow) frame;
+            }
+        }
+        return null;
+    }
+
+    private void loadObstacles() {
+        GameWindow window = findGameWindow();
+        if (window == null) {
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            window.getVisualizer().setObstacles(ObstacleMap.load(chooser.getSelectedFile().toPath()));
+        } catch (IOException e) {
+            Logger.error(messages.getString("LoadFailed") + ": {}", e.getMessage());
+        }
+    }
+
+    private void loadScenario() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        loadScenario(chooser.getSelectedFile().toPath());
+    }
+
+    /**
+     * Разбирает сценарий в фоновом потоке и ставит его в игровое окно
+     * в потоке событий; большой файл не задерживает интерфейс.
+     */
+    void loadScenario(Path path) {
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                return Scenario.load(path);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }).whenComplete((world, failure) -> SwingUtilities.invokeLater(() -> {
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                Logger.error(messages.getString("LoadFailed") + ": {}", cause.getMessage());
+                return;
+            }
+            applyScenario(world);
+        }));
+    }
+
+    private void applyScenario(WorldCheckpoint world) {
+        GameWindow window = findGameWindow();
+        if (window == null) {
+            window = new GameWindow();
+            addWindow(window, 400, 400);
+        }
+        window.getVisualizer().restoreWorld(world);
+        Logger.debug(messages.getString("ScenarioLoaded") + ": {}", world.size());
+    }
+
+    private void toggleRecording() {
+        GameWindow window = findGameWindow();
+        if (window == null) {
+            return;
+        }
+        GameVisualizer visualizer = window.getVisualizer();
+        if (visualizer.isRecording()) {
+            visualizer.stopRecording();
+            Logger.debug(messages.getString("RecordingStopped"));
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            visualizer.startRecording(chooser.getSelectedFile().toPath());
+            Logger.debug(messages.getString("RecordingStarted"));
+        } catch (IOException e) {
+            Logger.error(messages.getString("RecordingFailed") + ": {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Состояние окон снимается здесь, в EDT, а пишется в файл в фоне.
+     * Ошибка записи попадает в лог, а возвращённое будущее завершается с ней.
+     */
+    private CompletableFuture<Void> callCloseDialog(){
+        List<WindowState> windows = new ArrayList<>();
         for (JInternalFrame frame : desktopPane.getAllFrames()) {
-            ((AbstractWindow) frame).saveWindow();
+            AbstractWindow window = (AbstractWindow) frame;
+            WindowState state = new WindowState(window.getKind());
+            window.saveWindow(state);
+            windows.add(state);
         }
+        return new Checkpoint(windows).saveAsync(Checkpoint.defaultPath()).whenComplete((ignored, e) -> {
+            if (e != null) {
+                Logger.error(messages.getString("SaveFailed") + ": {}", causeOf(e).getMessage());
+            }
+        });
+    }
+
+    private static Throwable causeOf(Throwable e) {
+        return e.getCause() != null ? e.getCause() : e;
     }
 
     private JMenuItem createMenuItem(String text, int mnemonic, KeyStroke accelerator, ActionListener action) {
@@ -172,21 +330,42 @@ public class MainApplicationFrame extends JFrame{
     }
 
     private void exitApplication() {
+        if (exiting) {
+            return;
+        }
         UIManager.put("OptionPane.yesButtonText", messages.getString("Yes"));
         UIManager.put("OptionPane.noButtonText", messages.getString("No"));
 
         int confirmation = JOptionPane.showConfirmDialog(this, messages.getString("ConfirmationExitQuestion"),
                 messages.getString("ConfirmationExit"), JOptionPane.YES_NO_OPTION);
-        if (confirmation == JOptionPane.YES_OPTION) {
-            int saveConfirmation = JOptionPane.showConfirmDialog(this, messages.getString("Save")+"?",
-                    messages.getString("Save")+"?", JOptionPane.YES_NO_CANCEL_OPTION);
+        if (confirmation != JOptionPane.YES_OPTION) {
+            return;
+        }
+        int saveConfirmation = JOptionPane.showConfirmDialog(this, messages.getString("Save")+"?",
+                messages.getString("Save")+"?", JOptionPane.YES_NO_CANCEL_OPTION);
+        if (saveConfirmation == JOptionPane.NO_OPTION) {
+            closeApplication();
+            return;
+        }
+        if (saveConfirmation != JOptionPane.YES_OPTION) {
+            return;
+        }
 
-            if (saveConfirmation == JOptionPane.YES_OPTION) {
-                callCloseDialog();
+        // поток записи фоновый и не держит программу, поэтому выходим,
+        // только когда запись закончилась - удачно или нет
+        exiting = true;
+        callCloseDialog().whenComplete((ignored, e) -> SwingUtilities.invokeLater(() -> {
+            if (e != null) {
+                JOptionPane.showMessageDialog(this, messages.getString("SaveFailed") + ": " + causeOf(e).getMessage(),
+                        messages.getString("SaveFailed"), JOptionPane.ERROR_MESSAGE);
             }
+            closeApplication();
+        }));
+    }
 
-            this.dispose();
-        }
+    private void closeApplication() {
+        dispose();
+        System.exit(0);
     }
 }
 
@@ -0,0 +1,236 @@
+package gui;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.Timer;
+
+import metrics.Counter;
+import metrics.Gauge;
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+
+/**
+ * Таблица всех метрик реестра, обновляемая раз в {@link #REFRESH_PERIOD} мс.
+ * Строки таблицы - заранее выделенные массивы символов, которые
+ * переписываются на месте и рисуются через drawChars, так что обновление
+ * ничего не выделяет; массивы пересоздаются только при регистрации новых
+ * метрик. Длительности показываются в микросекундах.
+ */
+public class MetricsWindow extends AbstractWindow {
+    static final int REFRESH_PERIOD = 500;
+
+    private final MetricsPanel m_panel;
+    private final Timer m_timer;
+
+    public MetricsWindow() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    public MetricsWindow(MetricsRegistry registry) {
+        super();
+
+        setTitle("Метрики");
+        setResizable(true);
+        setClosable(true);
+        setMaximizable(true);
+        setIconifiable(true);
+
+        m_panel = new MetricsPanel(registry);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(new JScrollPane(m_panel), BorderLayout.CENTER);
+        getContentPane().add(panel);
+        pack();
+
+        m_timer = new Timer(REFRESH_PERIOD, event -> m_panel.refresh());
+        m_timer.start();
+    }
+
+    @Override
+    WindowState.Kind getKind() {
+        return WindowState.Kind.METRICS;
+    }
+
+    @Override
+    public void dispose() {
+        m_timer.stop();
+
+        super.dispose();
+    }
+
+    private static final class MetricsPanel extends JComponent {
+        private static final int NAME_WIDTH = 24;
+        private static final int VALUE_WIDTH = 10;
+        private static final int LINE_LENGTH = NAME_WIDTH + VALUE_WIDTH * 6;
+        private static final String HISTOGRAM_HEADER = "histogram, us";
+        private static final String[] HISTOGRAM_COLUMNS = { "count", "mean", "p50", "p99", "p99.9", "max" };
+        private static final String COUNTER_HEADER = "counter";
+        private static final String[] COUNTER_COLUMNS = { "total", "per sec" };
+        private static final String GAUGE_HEADER = "gauge";
+        private static final String[] GAUGE_COLUMNS = { "value" };
+
+        private final MetricsRegistry m_registry;
+        private int m_version = -1;
+        private Histogram[] m_histograms;
+        private Counter[] m_counters;
+        private long[] m_previousCounts;
+        private long m_previousTime;
+        private Gauge[] m_gauges;
+        private char[][] m_lines;
+        private int[] m_lengths;
+
+        MetricsPanel(MetricsRegistry registry) {
+            m_registry = registry;
+            setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            refresh();
+        }
+
+        void refresh() {
+            if (m_registry.getVersion() != m_version) {
+                rebuild();
+            }
+            long now = System.nanoTime();
+            long elapsed = Math.max(now - m_previousTime, 1);
+            int line = 1;
+            for (Histogram histogram : m_histograms) {
+                char[] chars = m_lines[line++];
+                int position = NAME_WIDTH;
+                position = putLong(chars, position, histogram.getCount());
+                position = putMicros(chars, position, (long) histogram.getMean());
+                position = putMicros(chars, position, histogram.getValueAtPercentile(50));
+                position = putMicros(chars, position, histogram.getValueAtPercentile(99));
+                position = putMicros(chars, position, histogram.getValueAtPercentile(99.9));
+                putMicros(chars, position, histogram.getMax());
+            }
+            line += 2;
+            for (int i = 0; i < m_counters.length; i++) {
+                char[] chars = m_lines[line++];
+                long count = m_counters[i].get();
+                int position = putLong(chars, NAME_WIDTH, count);
+                putLong(chars, position, (count - m_previousCounts[i]) * 1_000_000_000L / elapsed);
+                m_previousCounts[i] = count;
+            }
+            line += 2;
+            for (Gauge gauge : m_gauges) {
+                putLong(m_lines[line++], NAME_WIDTH, Math.round(gauge.value()));
+            }
+            m_previousTime = now;
+            repaint();
+        }
+
+        /**
+         * Выделяет строки под текущий набор метрик и заполняет их названия.
+         */
+        private void rebuild() {
+            m_version = m_registry.getVersion();
+            Map<String, Histogram> histograms = m_registry.getHistograms();
+            Map<String, Counter> counters = m_registry.getCounters();
+            Map<String, Gauge> gauges = m_registry.getGauges();
+            m_histograms = histograms.values().toArray(new Histogram[0]);
+            m_counters = counters.values().toArray(new Counter[0]);
+            m_previousCounts = new long[m_counters.length];
+            for (int i = 0; i < m_counters.length; i++) {
+                m_previousCounts[i] = m_counters[i].get();
+            }
+            m_previousTime = System.nanoTime();
+            m_gauges = gauges.values().toArray(new Gauge[0]);
+
+            // три заголовка и две пустые строки между разделами
+            int lines = 5 + histograms.size() + counters.size() + gauges.size();
+            m_lines = new char[lines][LINE_LENGTH];
+            m_lengths = new int[lines];
+            int line = 0;
+            line = putSection(line, HISTOGRAM_HEADER, HISTOGRAM_COLUMNS, histograms.keySet());
+            line = putSection(line + 1, COUNTER_HEADER, COUNTER_COLUMNS, counters.keySet());
+            putSection(line + 1, GAUGE_HEADER, GAUGE_COLUMNS, gauges.keySet());
+
+            FontMetrics metrics = getFontMetrics(getFont());
+            setPreferredSize(new Dimension(metrics.charWidth('0') * (LINE_LENGTH + 2),
+                    metrics.getHeight() * (lines + 1)));
+            revalidate();
+        }
+
+        private int putSection(int line, String header, String[] columns, Iterable<String> names) {
+            char[] chars = m_lines[line];
+            put(chars, 0, header);
+            int position = NAME_WIDTH;
+            for (String column : columns) {
+                position = putRight(chars, position, column);
+            }
+            m_lengths[line++] = position;
+            for (String name : names) {
+                put(m_lines[line], 0, name.length() < NAME_WIDTH ? name : name.substring(0, NAME_WIDTH - 1));
+                m_lengths[line++] = NAME_WIDTH + VALUE_WIDTH * columns.length;
+            }
+            return line;
+        }
+
+        private static void put(char[] chars, int position, String text) {
+            Arrays.fill(chars, position, chars.length, ' ');
+            text.getChars(0, text.length(), chars, position);
+        }
+
+        private static int putRight(char[] chars, int position, String text) {
+            int end = position + VALUE_WIDTH;
+            Arrays.fill(chars, position, end, ' ');
+            text.getChars(0, text.length(), chars, end - text.length());
+            return end;
+        }
+
+        /**
+         * Пишет число по правому краю столбца и возвращает начало следующего.
+         */
+        private static int putLong(char[] chars, int position, long value) {
+            int end = position + VALUE_WIDTH;
+            int index = end;
+            boolean negative = value < 0;
+            long rest = Math.abs(value);
+            do {
+                chars[--index] = (char) ('0' + rest % 10);
+                rest /= 10;
+            } while (rest > 0 && index > position + 1);
+            if (negative && index > position) {
+                chars[--index] = '-';
+            }
+            while (index > position) {
+                chars[--index] = ' ';
+            }
+            return end;
+        }
+
+        /**
+         * Наносекунды как микросекунды с одним знаком после точки.
+         */
+        private static int putMicros(char[] chars, int position, long nanos) {
+            long tenths = nanos / 100;
+            int end = putLong(chars, position, tenths / 10);
+            // сдвигаем целую часть на два символа влево и дописываем дробную
+            System.arraycopy(chars, position + 2, chars, position, VALUE_WIDTH - 2);
+            chars[end - 2] = '.';
+            chars[end - 1] = (char) ('0' + tenths % 10);
+            return end;
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            g.setColor(getForeground());
+            g.setFont(getFont());
+            FontMetrics metrics = g.getFontMetrics();
+            int x = metrics.charWidth('0');
+            int y = metrics.getAscent();
+            for (int line = 0; line < m_lines.length; line++) {
+                g.drawChars(m_lines[line], 0, m_lengths[line], x, y);
+                y += metrics.getHeight();
+            }
+        }
+    }
+}
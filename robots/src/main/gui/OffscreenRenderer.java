@@ -0,0 +1,63 @@
+package gui;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import model.ObstacleMap;
+import model.WorldSnapshot;
+
+/**
+ * Рисует ту же сцену, что и {@link GameVisualizer}, в BufferedImage без
+ * окна и экрана, в том числе при java.awt.headless=true. Картинка одна
+ * на рендерер и переписывается при каждом вызове {@link #render}, поэтому
+ * рендерер принадлежит одному потоку.
+ */
+public final class OffscreenRenderer
+{
+    public static final Color DEFAULT_BACKGROUND = Color.WHITE;
+
+    private final SceneRenderer m_scene = new SceneRenderer();
+    private final BufferedImage m_image;
+    private final Color m_background;
+
+    public OffscreenRenderer(int width, int height)
+    {
+        this(width, height, DEFAULT_BACKGROUND);
+    }
+
+    public OffscreenRenderer(int width, int height, Color background)
+    {
+        m_image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        m_background = background;
+    }
+
+    public int getWidth()
+    {
+        return m_image.getWidth();
+    }
+
+    public int getHeight()
+    {
+        return m_image.getHeight();
+    }
+
+    /**
+     * Возвращает картинку рендерера; она действительна до следующего вызова.
+     */
+    public BufferedImage render(ObstacleMap obstacles, WorldSnapshot snapshot)
+    {
+        Graphics2D g = m_image.createGraphics();
+        try
+        {
+            g.setColor(m_background);
+            g.fillRect(0, 0, m_image.getWidth(), m_image.getHeight());
+            m_scene.paint(g, obstacles, snapshot, -1, m_image.getWidth(), m_image.getHeight());
+        }
+        finally
+        {
+            g.dispose();
+        }
+        return m_image;
+    }
+}
@@ -0,0 +1,136 @@
+package gui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import model.Angles;
+
+/**
+ * Заранее отрисованные спрайты робота, по одному на каждый из HEADINGS
+ * курсов, и спрайт цели в одном атласе. Рисование робота — один drawImage
+ * из атласа без смены трансформации и цвета. Атлас создаётся совместимым
+ * с устройством вывода, чтобы Java2D мог держать его в видеопамяти.
+ * Спрайты рисуются без сглаживания, поэтому хватает прозрачности BITMASK
+ * и смешивание при выводе не нужно.
+ */
+final class RobotSprites
+{
+    static final int HEADINGS = 128;
+
+    private static final int FRAME = 36;
+    private static final int HALF = FRAME / 2;
+    private static final int COLUMNS = 16;
+    private static final int TARGET_FRAME = HEADINGS;
+
+    private final GraphicsConfiguration m_configuration;
+    private final BufferedImage m_atlas;
+
+    RobotSprites(GraphicsConfiguration configuration)
+    {
+        int rows = (HEADINGS + 1 + COLUMNS - 1) / COLUMNS;
+        m_configuration = configuration;
+        m_atlas = configuration != null
+            ? configuration.createCompatibleImage(COLUMNS * FRAME, rows * FRAME, Transparency.BITMASK)
+            : new BufferedImage(COLUMNS * FRAME, rows * FRAME, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = m_atlas.createGraphics();
+        try
+        {
+            for (int heading = 0; heading < HEADINGS; heading++)
+            {
+                Graphics2D frame = (Graphics2D)g.create(frameX(heading), frameY(heading), FRAME, FRAME);
+                frame.rotate(heading * Angles.TWO_PI / HEADINGS, HALF, HALF);
+                paintRobot(frame, HALF, HALF);
+                frame.dispose();
+            }
+            Graphics2D frame = (Graphics2D)g.create(frameX(TARGET_FRAME), frameY(TARGET_FRAME), FRAME, FRAME);
+            paintTarget(frame, HALF, HALF);
+            frame.dispose();
+        }
+        finally
+        {
+            g.dispose();
+        }
+    }
+
+    GraphicsConfiguration getConfiguration()
+    {
+        return m_configuration;
+    }
+
+    /**
+     * Может ли робот или цель с центром в (x, y) задеть область отсечения.
+     */
+    static boolean isVisible(Rectangle clip, int x, int y)
+    {
+        return x + HALF > clip.x && x - HALF < clip.x + clip.width
+            && y + HALF > clip.y && y - HALF < clip.y + clip.height;
+    }
+
+    static int headingOf(double direction)
+    {
+        return (int)Math.round(Angles.normalize(direction) * (HEADINGS / Angles.TWO_PI)) % HEADINGS;
+    }
+
+    void drawRobot(Graphics g, int x, int y, double direction)
+    {
+        drawFrame(g, headingOf(direction), x, y);
+    }
+
+    void drawTarget(Graphics g, int x, int y)
+    {
+        drawFrame(g, TARGET_FRAME, x, y);
+    }
+
+    private void drawFrame(Graphics g, int frame, int x, int y)
+    {
+        int sourceX = frameX(frame);
+        int sourceY = frameY(frame);
+        g.drawImage(m_atlas, x - HALF, y - HALF, x + HALF, y + HALF,
+            sourceX, sourceY, sourceX + FRAME, sourceY + FRAME, null);
+    }
+
+    private static int frameX(int frame)
+    {
+        return frame % COLUMNS * FRAME;
+    }
+
+    private static int frameY(int frame)
+    {
+        return frame / COLUMNS * FRAME;
+    }
+
+    private static void fillOval(Graphics g, int centerX, int centerY, int diam1, int diam2)
+    {
+        g.fillOval(centerX - diam1 / 2, centerY - diam2 / 2, diam1, diam2);
+    }
+
+    private static void drawOval(Graphics g, int centerX, int centerY, int diam1, int diam2)
+    {
+        g.drawOval(centerX - diam1 / 2, centerY - diam2 / 2, diam1, diam2);
+    }
+
+    private static void paintRobot(Graphics g, int x, int y)
+    {
+        g.setColor(Color.MAGENTA);
+        fillOval(g, x, y, 30, 10);
+        g.setColor(Color.BLACK);
+        drawOval(g, x, y, 30, 10);
+        g.setColor(Color.WHITE);
+        fillOval(g, x + 10, y, 5, 5);
+        g.setColor(Color.BLACK);
+        drawOval(g, x + 10, y, 5, 5);
+    }
+
+    private static void paintTarget(Graphics g, int x, int y)
+    {
+        g.setColor(Color.GREEN);
+        fillOval(g, x, y, 5, 5);
+        g.setColor(Color.BLACK);
+        drawOval(g, x, y, 5, 5);
+    }
+}
@@ -1,10 +1,15 @@
 package gui;
 
 import java.awt.Frame;
+import java.io.IOException;
+import java.nio.file.Paths;
 
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
+import log.Logger;
+import metrics.MetricsRegistry;
+
 public class RobotsProgram
 {
     public static void main(String[] args) {
@@ -16,10 +21,34 @@ public class RobotsProgram
       } catch (Exception e) {
         e.printStackTrace();
       }
+      String journalDirectory = System.getProperty("robots.log.journal");
+      if (journalDirectory != null) {
+        try {
+          Logger.enableJournal(Paths.get(journalDirectory));
+        } catch (IOException e) {
+          e.printStackTrace();
+        }
+      }
+      try {
+        MetricsRegistry.getDefault().registerMBean(MetricsRegistry.DEFAULT_OBJECT_NAME);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+      Checkpoint checkpoint = null;
+      try {
+        checkpoint = Checkpoint.load(Checkpoint.defaultPath());
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+      Checkpoint restored = checkpoint;
       SwingUtilities.invokeLater(() -> {
-        MainApplicationFrame frame = new MainApplicationFrame();
+        MainApplicationFrame frame = new MainApplicationFrame(restored);
         frame.pack();
         frame.setVisible(true);
         frame.setExtendedState(Frame.MAXIMIZED_BOTH);
+        String scenario = System.getProperty("robots.scenario");
+        if (scenario != null) {
+          frame.loadScenario(Paths.get(scenario));
+        }
       });
     }}
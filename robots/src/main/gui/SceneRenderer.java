@@ -0,0 +1,114 @@
+package gui;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+
+import model.ObstacleMap;
+import model.WorldSnapshot;
+
+/**
+ * Рисует сцену - препятствия, роботов с их целями и выбранного робота -
+ * на любом Graphics2D: и на панели {@link GameVisualizer}, и в картинке
+ * {@link OffscreenRenderer}, так что оба показывают одно и то же.
+ */
+final class SceneRenderer
+{
+    private RobotSprites m_sprites;
+
+    private static int round(double value)
+    {
+        return (int)(value + 0.5);
+    }
+
+    /**
+     * width и height - размер области вывода на случай, если у g нет
+     * области отсечения.
+     */
+    void paint(Graphics2D g, ObstacleMap obstacles, WorldSnapshot snapshot, int selectedRobot, int width, int height)
+    {
+        drawObstacles(g, obstacles);
+        drawRobots(g, snapshot, width, height);
+        if (selectedRobot >= 0 && selectedRobot < snapshot.size())
+        {
+            drawSelection(g, round(snapshot.getInterpolatedX(selectedRobot)), round(snapshot.getInterpolatedY(selectedRobot)));
+        }
+    }
+
+    /**
+     * Один проход по снимку: роботы и цели вне области отсечения
+     * пропускаются, одна и та же цель подряд рисуется один раз.
+     */
+    private void drawRobots(Graphics2D g, WorldSnapshot snapshot, int width, int height)
+    {
+        RobotSprites sprites = getSprites(g);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+        {
+            clip = new Rectangle(0, 0, width, height);
+        }
+        int lastTargetX = Integer.MIN_VALUE;
+        int lastTargetY = Integer.MIN_VALUE;
+        for (int i = 0; i < snapshot.size(); i++)
+        {
+            int x = round(snapshot.getInterpolatedX(i));
+            int y = round(snapshot.getInterpolatedY(i));
+            if (RobotSprites.isVisible(clip, x, y))
+            {
+                sprites.drawRobot(g, x, y, snapshot.getInterpolatedDirection(i));
+            }
+            int targetX = round(snapshot.getTargetX(i));
+            int targetY = round(snapshot.getTargetY(i));
+            if ((targetX != lastTargetX || targetY != lastTargetY)
+                && RobotSprites.isVisible(clip, targetX, targetY))
+            {
+                sprites.drawTarget(g, targetX, targetY);
+                lastTargetX = targetX;
+                lastTargetY = targetY;
+            }
+        }
+    }
+
+    private RobotSprites getSprites(Graphics2D g)
+    {
+        GraphicsConfiguration configuration = g.getDeviceConfiguration();
+        if (m_sprites == null || m_sprites.getConfiguration() != configuration)
+        {
+            m_sprites = new RobotSprites(configuration);
+        }
+        return m_sprites;
+    }
+
+    private static void fillOval(Graphics g, int centerX, int centerY, int diam1, int diam2)
+    {
+        g.fillOval(centerX - diam1 / 2, centerY - diam2 / 2, diam1, diam2);
+    }
+
+    private static void drawOval(Graphics g, int centerX, int centerY, int diam1, int diam2)
+    {
+        g.drawOval(centerX - diam1 / 2, centerY - diam2 / 2, diam1, diam2);
+    }
+
+    private void drawObstacles(Graphics2D g, ObstacleMap obstacles)
+    {
+        g.setColor(Color.GRAY);
+        for (int i = 0; i < obstacles.getRectangleCount(); i++)
+        {
+            g.fillRect(round(obstacles.getRectangleX(i)), round(obstacles.getRectangleY(i)),
+                round(obstacles.getRectangleWidth(i)), round(obstacles.getRectangleHeight(i)));
+        }
+        for (int i = 0; i < obstacles.getCircleCount(); i++)
+        {
+            int diameter = round(obstacles.getCircleRadius(i) * 2);
+            fillOval(g, round(obstacles.getCircleX(i)), round(obstacles.getCircleY(i)), diameter, diameter);
+        }
+    }
+
+    private void drawSelection(Graphics2D g, int x, int y)
+    {
+        g.setColor(Color.BLUE);
+        drawOval(g, x, y, 40, 40);
+    }
+}
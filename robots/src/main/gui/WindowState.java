@@ -0,0 +1,48 @@
+package gui;
+
+import java.awt.Rectangle;
+
+import model.WorldCheckpoint;
+
+/**
+ * Сохраняемое состояние одного внутреннего окна: его вид, положение
+ * и размер, а у игрового окна ещё и мир роботов.
+ */
+public final class WindowState {
+    public enum Kind {
+        GAME,
+        LOG,
+        METRICS
+    }
+
+    private final Kind m_kind;
+    private Rectangle m_bounds = new Rectangle();
+    private WorldCheckpoint m_world;
+
+    public WindowState(Kind kind) {
+        m_kind = kind;
+    }
+
+    public Kind getKind() {
+        return m_kind;
+    }
+
+    public Rectangle getBounds() {
+        return new Rectangle(m_bounds);
+    }
+
+    public void setBounds(Rectangle bounds) {
+        m_bounds = new Rectangle(bounds);
+    }
+
+    /**
+     * null, если у окна нет мира.
+     */
+    public WorldCheckpoint getWorld() {
+        return m_world;
+    }
+
+    public void setWorld(WorldCheckpoint world) {
+        m_world = world;
+    }
+}
@@ -1,9 +1,10 @@
 package gui;
 
-import javax.swing.*;
-import java.util.HashMap;
-
+/**
+ * Окно, состояние которого сохраняется в {@link Checkpoint} и
+ * восстанавливается из него при следующем запуске.
+ */
 public interface WithState {
-    void saveWindow();
-    void loadWindow();
+    void saveWindow(WindowState state);
+    void loadWindow(WindowState state);
 }
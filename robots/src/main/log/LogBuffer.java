@@ -0,0 +1,109 @@
+package log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import metrics.Counter;
+import metrics.MetricsRegistry;
+
+/**
+ * Кольцевой буфер записей лога ограниченного размера без блокировок.
+ * Каждая запись получает порядковый номер; писатели занимают номер
+ * атомарным инкрементом и кладут запись в ячейку номер % capacity,
+ * вытесняя самую старую. Читатели получают копии диапазонов по номерам,
+ * которые не меняются при последующих записях.
+ */
+class LogBuffer
+{
+    private static final Counter lost = MetricsRegistry.getDefault().counter("log.lost");
+
+    private final int m_capacity;
+    private final AtomicReferenceArray<LogEntry> m_slots;
+    private final AtomicLong m_nextSequence = new AtomicLong();
+
+    LogBuffer(int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        m_capacity = capacity;
+        m_slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    int capacity()
+    {
+        return m_capacity;
+    }
+
+    LogEntry append(LogLevel logLevel, String strMessage)
+    {
+        long sequence = m_nextSequence.getAndIncrement();
+        LogEntry entry = new LogEntry(sequence, System.currentTimeMillis(), logLevel, strMessage);
+        int index = slotOf(sequence);
+        while (true)
+        {
+            LogEntry current = m_slots.get(index);
+            if (current != null && current.getSequence() > sequence)
+            {
+                // пока мы писали, буфер успел обернуться ещё раз
+                lost.increment();
+                break;
+            }
+            if (m_slots.compareAndSet(index, current, entry))
+            {
+                break;
+            }
+        }
+        return entry;
+    }
+
+    long nextSequence()
+    {
+        return m_nextSequence.get();
+    }
+
+    long firstSequence()
+    {
+        return Math.max(0, m_nextSequence.get() - m_capacity);
+    }
+
+    int size()
+    {
+        return (int)Math.min(m_nextSequence.get(), m_capacity);
+    }
+
+    /**
+     * Копирует не более maxCount записей начиная с номера fromSequence.
+     * Уже вытесненные записи пропускаются; копирование останавливается на
+     * первой записи, номер которой занят, но сама она ещё не опубликована,
+     * чтобы читающий по номерам не пропустил её при следующем вызове.
+     */
+    List<LogEntry> copyFrom(long fromSequence, int maxCount)
+    {
+        long next = m_nextSequence.get();
+        long sequence = Math.max(fromSequence, next - m_capacity);
+        long end = Math.min(next, sequence + Math.max(0, maxCount));
+        List<LogEntry> result = new ArrayList<>((int)Math.max(0, end - sequence));
+        for (; sequence < end; sequence++)
+        {
+            LogEntry entry = m_slots.get(slotOf(sequence));
+            if (entry == null || entry.getSequence() < sequence)
+            {
+                break;
+            }
+            if (entry.getSequence() == sequence)
+            {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private int slotOf(long sequence)
+    {
+        return (int)(sequence % m_capacity);
+    }
+}
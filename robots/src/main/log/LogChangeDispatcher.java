@@ -0,0 +1,86 @@
+package log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import metrics.Histogram;
+import metrics.MetricsRegistry;
+
+/**
+ * Собирает уведомления об изменении лога и выполняет их на отдельном потоке
+ * не чаще, чем раз в заданный интервал. Сколько бы раз ни был вызван
+ * {@link #signal()} за интервал, действие выполнится один раз.
+ */
+class LogChangeDispatcher
+{
+    private static final Histogram dispatchTime = MetricsRegistry.getDefault().histogram("log.dispatchTime");
+    private static final Histogram dispatchDelay = MetricsRegistry.getDefault().histogram("log.dispatchDelay");
+
+    private final Runnable m_action;
+    private final long m_intervalNanos;
+    private final AtomicBoolean m_pending = new AtomicBoolean();
+    private final Thread m_thread;
+    private volatile boolean m_running = true;
+    /**
+     * Когда пришёл первый сигнал после последнего выполнения действия.
+     */
+    private volatile long m_signalTime;
+
+    LogChangeDispatcher(String name, long intervalMillis, Runnable action)
+    {
+        m_action = action;
+        m_intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        m_thread = new Thread(this::run, name);
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    void signal()
+    {
+        if (!m_pending.get())
+        {
+            // время пишется до флага, чтобы поток рассылки его увидел
+            m_signalTime = System.nanoTime();
+            if (m_pending.compareAndSet(false, true))
+            {
+                LockSupport.unpark(m_thread);
+            }
+        }
+    }
+
+    void shutdown()
+    {
+        m_running = false;
+        LockSupport.unpark(m_thread);
+    }
+
+    private void run()
+    {
+        while (m_running)
+        {
+            if (!m_pending.getAndSet(false))
+            {
+                LockSupport.park(this);
+                continue;
+            }
+            long started = System.nanoTime();
+            dispatchDelay.record(started - m_signalTime);
+            try
+            {
+                m_action.run();
+            }
+            catch (RuntimeException e)
+            {
+                e.printStackTrace();
+            }
+            dispatchTime.recordSince(started);
+            long deadline = started + m_intervalNanos;
+            long remaining;
+            while (m_running && (remaining = deadline - System.nanoTime()) > 0)
+            {
+                LockSupport.parkNanos(this, remaining);
+            }
+        }
+    }
+}
@@ -2,15 +2,34 @@ package log;
 
 public class LogEntry
 {
-    private LogLevel m_logLevel;
-    private String m_strMessage;
+    private final long m_sequence;
+    private final long m_timestamp;
+    private final LogLevel m_logLevel;
+    private final String m_strMessage;
     
     public LogEntry(LogLevel logLevel, String strMessage)
     {
+        this(-1, System.currentTimeMillis(), logLevel, strMessage);
+    }
+
+    public LogEntry(long sequence, long timestamp, LogLevel logLevel, String strMessage)
+    {
+        m_sequence = sequence;
+        m_timestamp = timestamp;
         m_strMessage = strMessage;
         m_logLevel = logLevel;
     }
     
+    public long getSequence()
+    {
+        return m_sequence;
+    }
+
+    public long getTimestamp()
+    {
+        return m_timestamp;
+    }
+
     public String getMessage()
     {
         return m_strMessage;
@@ -21,4 +40,3 @@ public class LogEntry
         return m_logLevel;
     }
 }
-
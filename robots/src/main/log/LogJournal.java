@@ -0,0 +1,202 @@
+package log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Журнал лога на диске. Записи пишутся в отображённые в память файлы-сегменты
+ * фиксированного размера; когда сегмент заполнен, открывается следующий, а самые
+ * старые сегменты сверх m_maxSegments удаляются.
+ *
+ * Формат сегмента: int MAGIC, int FORMAT_VERSION, затем записи подряд:
+ * int длина, long номер, long время, byte уровень, байты сообщения в UTF-8.
+ * Длина пишется последней, нулевая длина означает конец записанных данных.
+ * Имя сегмента - номер его первой записи; файл с тем же именем, оставшийся
+ * от оборванного запуска без записей, переписывается.
+ *
+ * Читатель в том же процессе смотрит в ту же отображённую память, поэтому
+ * конец записанных данных текущего сегмента публикуется ему через volatile-поле
+ * после того, как запись целиком лежит в памяти: длину без тела он не увидит.
+ *
+ * Запись в журнал - это копирование в отображённую память под блокировкой журнала
+ * на потоке, который пишет в лог; сброс на диск делает операционная система.
+ * Номера записей продолжаются с того места, где остановился журнал при прошлом
+ * запуске. Источник вызывает приёмники по возрастанию номеров, так что записи
+ * в сегментах упорядочены; на этом держатся имена сегментов и поиск в читателе.
+ */
+public class LogJournal implements LogSink, AutoCloseable
+{
+    public static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+    public static final int DEFAULT_MAX_SEGMENTS = 64;
+
+    static final int MAGIC = 0x524C4A31;
+    static final int FORMAT_VERSION = 1;
+    static final int SEGMENT_HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 4 + 8 + 8 + 1;
+    static final String SEGMENT_SUFFIX = ".journal";
+
+    private final LogWindowSource m_source;
+    private final Path m_directory;
+    private final int m_segmentSize;
+    private final int m_maxSegments;
+    private final ArrayDeque<Path> m_segments = new ArrayDeque<>();
+    private final long m_sequenceOffset;
+    private final long m_startSequence;
+    private final LogJournalReader m_reader;
+
+    private MappedByteBuffer m_current;
+    private boolean m_closed;
+
+    public LogJournal(LogWindowSource source, Path directory) throws IOException
+    {
+        this(source, directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    public LogJournal(LogWindowSource source, Path directory, int segmentSize, int maxSegments)
+        throws IOException
+    {
+        if (segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE || maxSegments <= 0)
+        {
+            throw new IllegalArgumentException("segmentSize " + segmentSize + ", maxSegments " + maxSegments);
+        }
+        m_source = source;
+        m_directory = Files.createDirectories(directory);
+        m_segmentSize = segmentSize;
+        m_maxSegments = maxSegments;
+        m_reader = new LogJournalReader(m_directory);
+        m_segments.addAll(m_reader.segmentPaths());
+        m_startSequence = m_reader.getNextSequence();
+        m_sequenceOffset = m_startSequence - source.getNextSequence();
+        source.addSink(this);
+    }
+
+    /**
+     * Сколько нужно прибавить к номеру записи источника, чтобы получить её номер в журнале.
+     */
+    public long getSequenceOffset()
+    {
+        return m_sequenceOffset;
+    }
+
+    public LogJournalReader getReader()
+    {
+        return m_reader;
+    }
+
+    @Override
+    public synchronized void write(LogEntry entry)
+    {
+        if (m_closed)
+        {
+            return;
+        }
+        try
+        {
+            append(entry);
+        }
+        catch (IOException e)
+        {
+            // писать об ошибке в тот же лог бессмысленно - журнал просто выключается
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    private void append(LogEntry entry) throws IOException
+    {
+        if (entry.getSequence() + m_sequenceOffset < m_startSequence)
+        {
+            // номер выдан до подключения журнала и занят записью прошлого запуска
+            return;
+        }
+        byte[] message = entry.getMessage() == null
+            ? new byte[0]
+            : entry.getMessage().getBytes(StandardCharsets.UTF_8);
+        int maxMessageLength = m_segmentSize - SEGMENT_HEADER_SIZE - RECORD_HEADER_SIZE;
+        int messageLength = Math.min(message.length, maxMessageLength);
+        int recordLength = RECORD_HEADER_SIZE + messageLength;
+        long sequence = entry.getSequence() + m_sequenceOffset;
+        if (m_current == null || m_current.remaining() < recordLength)
+        {
+            rollOver(sequence);
+        }
+        int position = m_current.position();
+        m_current.position(position + 4);
+        m_current.putLong(sequence);
+        m_current.putLong(entry.getTimestamp());
+        m_current.put((byte)entry.getLevel().ordinal());
+        m_current.put(message, 0, messageLength);
+        m_current.putInt(position, recordLength - 4);
+        m_reader.publish(m_current.position());
+    }
+
+    private void rollOver(long firstSequence) throws IOException
+    {
+        if (m_current != null)
+        {
+            m_current.force();
+            m_current = null;
+        }
+        Path path = m_directory.resolve(LogJournalReader.segmentName(firstSequence));
+        // имя занято только пустым сегментом прошлого запуска: номера продолжаются
+        // с последней записи на диске
+        m_reader.invalidate();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            m_current = channel.map(FileChannel.MapMode.READ_WRITE, 0, m_segmentSize);
+        }
+        m_current.putInt(MAGIC);
+        m_current.putInt(FORMAT_VERSION);
+        m_reader.startSegment(path, m_current.position());
+        m_segments.remove(path);
+        m_segments.addLast(path);
+        while (m_segments.size() > m_maxSegments)
+        {
+            try
+            {
+                Files.deleteIfExists(m_segments.peekFirst());
+            }
+            catch (IOException e)
+            {
+                // файл, отображённый читателем, в некоторых системах не удалить,
+                // пока отображение не собрано; попробуем при следующей смене сегмента
+                break;
+            }
+            m_segments.removeFirst();
+        }
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (m_closed)
+        {
+            return;
+        }
+        m_closed = true;
+        m_source.removeSink(this);
+        if (m_current != null)
+        {
+            m_current.force();
+            m_current = null;
+        }
+    }
+
+    static ByteBuffer checkHeader(ByteBuffer segment, Path path) throws IOException
+    {
+        if (segment.limit() < SEGMENT_HEADER_SIZE
+            || segment.getInt(0) != MAGIC || segment.getInt(4) != FORMAT_VERSION)
+        {
+            throw new IOException("Not a log journal segment: " + path);
+        }
+        return segment;
+    }
+}
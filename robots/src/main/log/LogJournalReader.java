@@ -0,0 +1,282 @@
+package log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Читает записи журнала {@link LogJournal} по номерам. Сегменты отображаются
+ * в память только для чтения; для последнего прочитанного сегмента хранятся
+ * смещения записей, чтобы постраничное чтение не сканировало его заново.
+ * Сегмент, в который сейчас пишет журнал этого процесса, читается только
+ * до опубликованного журналом конца записанных данных.
+ */
+public class LogJournalReader
+{
+    private static final long SEGMENT_LIST_TTL = 1_000_000_000L;
+    private static final LogLevel[] levels = LogLevel.values();
+
+    private final Path m_directory;
+    private long[] m_segmentStarts = new long[0];
+    private List<Path> m_segmentPaths = Collections.emptyList();
+    private long m_segmentsListedAt;
+    private boolean m_segmentsValid;
+
+    private Path m_cachedPath;
+    private ByteBuffer m_cachedSegment;
+    private int[] m_offsets = new int[0];
+    private int m_offsetCount;
+    private int m_scanPosition;
+
+    private volatile Path m_writingPath;
+    private volatile int m_writtenLimit;
+
+    public LogJournalReader(Path directory)
+    {
+        m_directory = directory;
+    }
+
+    static String segmentName(long firstSequence)
+    {
+        return String.format("%020d", firstSequence) + LogJournal.SEGMENT_SUFFIX;
+    }
+
+    synchronized List<Path> segmentPaths() throws IOException
+    {
+        listSegments(true);
+        return m_segmentPaths;
+    }
+
+    /**
+     * Забывает список сегментов и отображение последнего прочитанного, чтобы
+     * переписываемый или удаляемый файл не читался через старое отображение.
+     */
+    synchronized void invalidate()
+    {
+        m_segmentsValid = false;
+        m_cachedPath = null;
+        m_cachedSegment = null;
+    }
+
+    /**
+     * Вызывается журналом без блокировки читателя: сначала сбрасывается
+     * предел, потом меняется сегмент, так что увидевший новый сегмент
+     * увидит и его предел.
+     */
+    void startSegment(Path path, int limit)
+    {
+        m_writtenLimit = limit;
+        m_writingPath = path;
+    }
+
+    /**
+     * Конец записанных данных текущего сегмента; volatile-запись идёт после
+     * записи данных и публикует их читателю.
+     */
+    void publish(int limit)
+    {
+        m_writtenLimit = limit;
+    }
+
+    /**
+     * Номер самой старой записи в журнале или -1, если журнал пуст.
+     */
+    public synchronized long getFirstSequence()
+    {
+        try
+        {
+            listSegments(false);
+        }
+        catch (IOException e)
+        {
+            return -1;
+        }
+        return m_segmentStarts.length == 0 ? -1 : m_segmentStarts[0];
+    }
+
+    /**
+     * Номер, следующий за последней записью журнала.
+     */
+    public synchronized long getNextSequence() throws IOException
+    {
+        listSegments(true);
+        if (m_segmentStarts.length == 0)
+        {
+            return 0;
+        }
+        int last = m_segmentStarts.length - 1;
+        openSegment(m_segmentPaths.get(last));
+        scanTo(Integer.MAX_VALUE);
+        if (m_offsetCount == 0)
+        {
+            return m_segmentStarts[last];
+        }
+        return sequenceAt(m_offsetCount - 1) + 1;
+    }
+
+    public synchronized List<LogEntry> read(long fromSequence, int maxCount)
+    {
+        List<LogEntry> result = new ArrayList<>();
+        try
+        {
+            listSegments(false);
+            int segment = Arrays.binarySearch(m_segmentStarts, fromSequence);
+            if (segment < 0)
+            {
+                segment = Math.max(0, -segment - 2);
+            }
+            long sequence = fromSequence;
+            for (; segment < m_segmentStarts.length && result.size() < maxCount; segment++)
+            {
+                openSegment(m_segmentPaths.get(segment));
+                int index = indexOf(sequence);
+                while (result.size() < maxCount && scanTo(index + 1))
+                {
+                    result.add(readEntry(m_offsets[index]));
+                    index++;
+                }
+                if (segment + 1 < m_segmentStarts.length)
+                {
+                    sequence = m_segmentStarts[segment + 1];
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // сегмент мог быть удалён при ротации - отдаём то, что успели прочитать
+        }
+        return result;
+    }
+
+    private void listSegments(boolean force) throws IOException
+    {
+        long now = System.nanoTime();
+        if (!force && m_segmentsValid && now - m_segmentsListedAt < SEGMENT_LIST_TTL)
+        {
+            return;
+        }
+        List<Path> paths = new ArrayList<>();
+        if (Files.isDirectory(m_directory))
+        {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(m_directory, "*" + LogJournal.SEGMENT_SUFFIX))
+            {
+                for (Path path : stream)
+                {
+                    paths.add(path);
+                }
+            }
+        }
+        Collections.sort(paths);
+        long[] starts = new long[paths.size()];
+        for (int i = 0; i < starts.length; i++)
+        {
+            String name = paths.get(i).getFileName().toString();
+            starts[i] = Long.parseLong(name.substring(0, name.length() - LogJournal.SEGMENT_SUFFIX.length()));
+        }
+        m_segmentPaths = paths;
+        m_segmentStarts = starts;
+        m_segmentsListedAt = now;
+        m_segmentsValid = true;
+    }
+
+    private void openSegment(Path path) throws IOException
+    {
+        if (path.equals(m_cachedPath))
+        {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            m_cachedSegment = LogJournal.checkHeader(
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+        }
+        m_cachedPath = path;
+        m_offsetCount = 0;
+        m_scanPosition = LogJournal.SEGMENT_HEADER_SIZE;
+    }
+
+    /**
+     * Дочитывает смещения записей текущего сегмента, пока их не станет count
+     * или пока записи не кончатся. Сегмент, в который ещё пишут, дочитывается
+     * при следующих вызовах.
+     */
+    private boolean scanTo(int count)
+    {
+        ByteBuffer segment = m_cachedSegment;
+        int limit = segment.limit();
+        if (m_cachedPath.equals(m_writingPath))
+        {
+            limit = Math.min(limit, m_writtenLimit);
+        }
+        while (m_offsetCount < count && m_scanPosition + 4 <= limit)
+        {
+            int length = segment.getInt(m_scanPosition);
+            if (length <= 0 || m_scanPosition + 4 + length > limit)
+            {
+                break;
+            }
+            if (m_offsetCount == m_offsets.length)
+            {
+                m_offsets = Arrays.copyOf(m_offsets, Math.max(1024, m_offsets.length * 2));
+            }
+            m_offsets[m_offsetCount++] = m_scanPosition;
+            m_scanPosition += 4 + length;
+        }
+        return m_offsetCount >= count;
+    }
+
+    /**
+     * Индекс первой записи сегмента с номером не меньше sequence. Номера могут
+     * идти с пропусками, если записи вытеснялись из источника раньше, чем
+     * журнал успевал их забрать.
+     */
+    private int indexOf(long sequence)
+    {
+        while ((m_offsetCount == 0 || sequenceAt(m_offsetCount - 1) < sequence)
+            && scanTo(m_offsetCount + 1))
+        {
+        }
+        int low = 0;
+        int high = m_offsetCount;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (sequenceAt(middle) < sequence)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long sequenceAt(int index)
+    {
+        return m_cachedSegment.getLong(m_offsets[index] + 4);
+    }
+
+    private LogEntry readEntry(int offset)
+    {
+        ByteBuffer segment = m_cachedSegment;
+        int length = segment.getInt(offset);
+        long sequence = segment.getLong(offset + 4);
+        long timestamp = segment.getLong(offset + 12);
+        int level = segment.get(offset + 20);
+        byte[] message = new byte[length - (LogJournal.RECORD_HEADER_SIZE - 4)];
+        segment.get(offset + LogJournal.RECORD_HEADER_SIZE, message);
+        LogLevel logLevel = level >= 0 && level < levels.length ? levels[level] : LogLevel.Info;
+        return new LogEntry(sequence, timestamp, logLevel, new String(message, StandardCharsets.UTF_8));
+    }
+}
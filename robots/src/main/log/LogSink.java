@@ -0,0 +1,11 @@
+package log;
+
+/**
+ * Получает каждую запись лога синхронно, на потоке, который её добавил.
+ * Вызовы приёмников идут по одному и по возрастанию номеров записей.
+ * Реализация должна быть быстрой.
+ */
+public interface LogSink
+{
+    void write(LogEntry entry);
+}
@@ -1,37 +1,58 @@
 package log;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import metrics.Histogram;
+import metrics.MetricsRegistry;
 
 /**
- * Что починить:
- * 1. Этот класс порождает утечку ресурсов (связанные слушатели оказываются
- * удерживаемыми в памяти)
- * 2. Этот класс хранит активные сообщения лога, но в такой реализации он 
- * их лишь накапливает. Надо же, чтобы количество сообщений в логе было ограничено 
- * величиной m_iQueueLength (т.е. реально нужна очередь сообщений 
- * ограниченного размера) 
+ * Хранит последние m_iQueueLength сообщений лога. Слушатели хранятся по
+ * слабым ссылкам: источник не удерживает их в памяти, а собранные сборщиком
+ * мусора слушатели удаляются из списка при очередном уведомлении.
  */
 public class LogWindowSource
 {
-    private int m_iQueueLength;
+    public static final long DEFAULT_NOTIFY_INTERVAL = 16;
+    private static final Histogram appendTime = MetricsRegistry.getDefault().histogram("log.appendTime");
+
+    private final int m_iQueueLength;
     
-    private ArrayList<LogEntry> m_messages;
-    private final ArrayList<LogChangeListener> m_listeners;
-    private volatile LogChangeListener[] m_activeListeners;
+    private final LogBuffer m_messages;
+    private final ArrayList<WeakReference<LogChangeListener>> m_listeners;
+    private volatile WeakReference<LogChangeListener>[] m_activeListeners;
+    private final LogChangeDispatcher m_dispatcher;
+    private final CopyOnWriteArrayList<LogSink> m_sinks = new CopyOnWriteArrayList<LogSink>();
+    private final Object m_sinkLock = new Object();
+    private volatile LogLevel m_minimumLevel = LogLevel.Debug;
     
     public LogWindowSource(int iQueueLength) 
+    {
+        this(iQueueLength, DEFAULT_NOTIFY_INTERVAL);
+    }
+
+    /**
+     * Слушатели уведомляются на отдельном потоке не чаще, чем раз
+     * в notifyIntervalMillis, сколько бы сообщений ни пришло за это время.
+     */
+    public LogWindowSource(int iQueueLength, long notifyIntervalMillis) 
     {
         m_iQueueLength = iQueueLength;
-        m_messages = new ArrayList<LogEntry>(iQueueLength);
-        m_listeners = new ArrayList<LogChangeListener>();
+        m_messages = new LogBuffer(iQueueLength);
+        m_listeners = new ArrayList<WeakReference<LogChangeListener>>();
+        m_dispatcher = new LogChangeDispatcher("log change dispatcher",
+            notifyIntervalMillis, this::notifyListeners);
     }
     
     public void registerListener(LogChangeListener listener)
     {
         synchronized(m_listeners)
         {
-            m_listeners.add(listener);
+            purgeCollectedListeners();
+            m_listeners.add(new WeakReference<LogChangeListener>(listener));
             m_activeListeners = null;
         }
     }
@@ -40,50 +61,175 @@ public class LogWindowSource
     {
         synchronized(m_listeners)
         {
-            m_listeners.remove(listener);
+            m_listeners.removeIf(reference -> {
+                LogChangeListener registered = reference.get();
+                return registered == null || registered == listener;
+            });
             m_activeListeners = null;
         }
     }
     
+    /**
+     * В отличие от слушателей, приёмники хранятся по сильным ссылкам и должны
+     * удаляться явно.
+     */
+    public void addSink(LogSink sink)
+    {
+        m_sinks.add(sink);
+    }
+
+    public void removeSink(LogSink sink)
+    {
+        m_sinks.remove(sink);
+    }
+
+    public LogLevel getMinimumLevel()
+    {
+        return m_minimumLevel;
+    }
+
+    public void setMinimumLevel(LogLevel minimumLevel)
+    {
+        m_minimumLevel = minimumLevel;
+    }
+
+    public boolean isEnabled(LogLevel logLevel)
+    {
+        return logLevel.level() >= m_minimumLevel.level();
+    }
+
     public void append(LogLevel logLevel, String strMessage)
     {
-        LogEntry entry = new LogEntry(logLevel, strMessage);
-        m_messages.add(entry);
-        LogChangeListener [] activeListeners = m_activeListeners;
+        if (!isEnabled(logLevel))
+        {
+            return;
+        }
+        long started = System.nanoTime();
+        if (m_sinks.isEmpty())
+        {
+            m_messages.append(logLevel, strMessage);
+        }
+        else
+        {
+            // номер выдаётся под той же блокировкой, что и вызов приёмников,
+            // иначе записи приходили бы к ним не по порядку номеров
+            synchronized (m_sinkLock)
+            {
+                LogEntry entry = m_messages.append(logLevel, strMessage);
+                for (LogSink sink : m_sinks)
+                {
+                    sink.write(entry);
+                }
+            }
+        }
+        m_dispatcher.signal();
+        appendTime.recordSince(started);
+    }
+
+    private void notifyListeners()
+    {
+        WeakReference<LogChangeListener>[] activeListeners = m_activeListeners;
         if (activeListeners == null)
         {
             synchronized (m_listeners)
             {
                 if (m_activeListeners == null)
                 {
-                    activeListeners = m_listeners.toArray(new LogChangeListener [0]);
-                    m_activeListeners = activeListeners;
+                    m_activeListeners = toArray(m_listeners);
                 }
+                activeListeners = m_activeListeners;
             }
         }
-        for (LogChangeListener listener : activeListeners)
+        boolean hasCollectedListeners = false;
+        for (WeakReference<LogChangeListener> reference : activeListeners)
         {
+            LogChangeListener listener = reference.get();
+            if (listener == null)
+            {
+                hasCollectedListeners = true;
+                continue;
+            }
             listener.onLogChanged();
         }
+        if (hasCollectedListeners)
+        {
+            synchronized (m_listeners)
+            {
+                purgeCollectedListeners();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static WeakReference<LogChangeListener>[] toArray(ArrayList<WeakReference<LogChangeListener>> listeners)
+    {
+        return listeners.toArray((WeakReference<LogChangeListener>[])new WeakReference<?>[0]);
+    }
+
+    private void purgeCollectedListeners()
+    {
+        if (m_listeners.removeIf(reference -> reference.get() == null))
+        {
+            m_activeListeners = null;
+        }
     }
     
+    public int listenerCount()
+    {
+        synchronized (m_listeners)
+        {
+            purgeCollectedListeners();
+            return m_listeners.size();
+        }
+    }
+
+    public void close()
+    {
+        m_dispatcher.shutdown();
+    }
+
     public int size()
     {
         return m_messages.size();
     }
 
+    public int capacity()
+    {
+        return m_iQueueLength;
+    }
+
+    /**
+     * Номер самой старой записи, которая ещё может храниться в логе.
+     */
+    public long getFirstSequence()
+    {
+        return m_messages.firstSequence();
+    }
+
+    /**
+     * Номер, который получит следующая запись.
+     */
+    public long getNextSequence()
+    {
+        return m_messages.nextSequence();
+    }
+
+    public List<LogEntry> rangeFromSequence(long fromSequence, int count)
+    {
+        return m_messages.copyFrom(fromSequence, count);
+    }
+
     public Iterable<LogEntry> range(int startFrom, int count)
     {
-        if (startFrom < 0 || startFrom >= m_messages.size())
+        if (startFrom < 0 || count <= 0)
         {
             return Collections.emptyList();
         }
-        int indexTo = Math.min(startFrom + count, m_messages.size());
-        return m_messages.subList(startFrom, indexTo);
+        return m_messages.copyFrom(m_messages.firstSequence() + startFrom, count);
     }
 
     public Iterable<LogEntry> all()
     {
-        return m_messages;
+        return m_messages.copyFrom(m_messages.firstSequence(), m_iQueueLength);
     }
 }
@@ -1,28 +1,255 @@
 package log;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+import metrics.MetricsRegistry;
+
+/**
+ * Сообщения ниже порога {@link LogWindowSource#getMinimumLevel()} отбрасываются
+ * до форматирования: шаблон с аргументами или {@link Supplier} вычисляются
+ * только если уровень включён. Аргументы-примитивы всё же упаковываются при
+ * вызове, поэтому в горячих циклах стоит проверять {@link #isEnabled(LogLevel)}.
+ */
 public final class Logger
 {
     private static final LogWindowSource defaultLogSource;
+    private static volatile LogJournal journal;
     static {
         defaultLogSource = new LogWindowSource(100);
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        metrics.gauge("log.buffered", defaultLogSource::size);
+        metrics.gauge("log.evicted", () -> Math.max(0, defaultLogSource.getNextSequence() - defaultLogSource.capacity()));
+        metrics.gauge("log.listeners", defaultLogSource::listenerCount);
     }
     
     private Logger()
     {
     }
 
+    public static boolean isEnabled(LogLevel logLevel)
+    {
+        return defaultLogSource.isEnabled(logLevel);
+    }
+
+    public static void log(LogLevel logLevel, String strMessage)
+    {
+        if (defaultLogSource.isEnabled(logLevel))
+        {
+            defaultLogSource.append(logLevel, strMessage);
+        }
+    }
+
+    public static void log(LogLevel logLevel, String pattern, Object arg1)
+    {
+        if (defaultLogSource.isEnabled(logLevel))
+        {
+            defaultLogSource.append(logLevel, MessageFormatter.format(pattern, arg1));
+        }
+    }
+
+    public static void log(LogLevel logLevel, String pattern, Object arg1, Object arg2)
+    {
+        if (defaultLogSource.isEnabled(logLevel))
+        {
+            defaultLogSource.append(logLevel, MessageFormatter.format(pattern, arg1, arg2));
+        }
+    }
+
+    public static void log(LogLevel logLevel, String pattern, Object arg1, Object arg2, Object arg3)
+    {
+        if (defaultLogSource.isEnabled(logLevel))
+        {
+            defaultLogSource.append(logLevel, MessageFormatter.format(pattern, arg1, arg2, arg3));
+        }
+    }
+
+    public static void log(LogLevel logLevel, String pattern, Object... args)
+    {
+        if (defaultLogSource.isEnabled(logLevel))
+        {
+            defaultLogSource.append(logLevel, MessageFormatter.format(pattern, args));
+        }
+    }
+
+    public static void log(LogLevel logLevel, Supplier<String> message)
+    {
+        if (defaultLogSource.isEnabled(logLevel))
+        {
+            defaultLogSource.append(logLevel, message.get());
+        }
+    }
+
+    public static void trace(String strMessage)
+    {
+        log(LogLevel.Trace, strMessage);
+    }
+
+    public static void trace(String pattern, Object arg1)
+    {
+        log(LogLevel.Trace, pattern, arg1);
+    }
+
+    public static void trace(String pattern, Object arg1, Object arg2)
+    {
+        log(LogLevel.Trace, pattern, arg1, arg2);
+    }
+
+    public static void trace(String pattern, Object arg1, Object arg2, Object arg3)
+    {
+        log(LogLevel.Trace, pattern, arg1, arg2, arg3);
+    }
+
+    public static void trace(String pattern, Object... args)
+    {
+        log(LogLevel.Trace, pattern, args);
+    }
+
+    public static void trace(Supplier<String> message)
+    {
+        log(LogLevel.Trace, message);
+    }
+
     public static void debug(String strMessage)
     {
-        defaultLogSource.append(LogLevel.Debug, strMessage);
+        log(LogLevel.Debug, strMessage);
     }
-    
+
+    public static void debug(String pattern, Object arg1)
+    {
+        log(LogLevel.Debug, pattern, arg1);
+    }
+
+    public static void debug(String pattern, Object arg1, Object arg2)
+    {
+        log(LogLevel.Debug, pattern, arg1, arg2);
+    }
+
+    public static void debug(String pattern, Object arg1, Object arg2, Object arg3)
+    {
+        log(LogLevel.Debug, pattern, arg1, arg2, arg3);
+    }
+
+    public static void debug(String pattern, Object... args)
+    {
+        log(LogLevel.Debug, pattern, args);
+    }
+
+    public static void debug(Supplier<String> message)
+    {
+        log(LogLevel.Debug, message);
+    }
+
+    public static void info(String strMessage)
+    {
+        log(LogLevel.Info, strMessage);
+    }
+
+    public static void info(String pattern, Object arg1)
+    {
+        log(LogLevel.Info, pattern, arg1);
+    }
+
+    public static void info(String pattern, Object arg1, Object arg2)
+    {
+        log(LogLevel.Info, pattern, arg1, arg2);
+    }
+
+    public static void info(String pattern, Object arg1, Object arg2, Object arg3)
+    {
+        log(LogLevel.Info, pattern, arg1, arg2, arg3);
+    }
+
+    public static void info(String pattern, Object... args)
+    {
+        log(LogLevel.Info, pattern, args);
+    }
+
+    public static void info(Supplier<String> message)
+    {
+        log(LogLevel.Info, message);
+    }
+
+    public static void warning(String strMessage)
+    {
+        log(LogLevel.Warning, strMessage);
+    }
+
+    public static void warning(String pattern, Object arg1)
+    {
+        log(LogLevel.Warning, pattern, arg1);
+    }
+
+    public static void warning(String pattern, Object arg1, Object arg2)
+    {
+        log(LogLevel.Warning, pattern, arg1, arg2);
+    }
+
+    public static void warning(String pattern, Object arg1, Object arg2, Object arg3)
+    {
+        log(LogLevel.Warning, pattern, arg1, arg2, arg3);
+    }
+
+    public static void warning(String pattern, Object... args)
+    {
+        log(LogLevel.Warning, pattern, args);
+    }
+
+    public static void warning(Supplier<String> message)
+    {
+        log(LogLevel.Warning, message);
+    }
+
     public static void error(String strMessage)
     {
-        defaultLogSource.append(LogLevel.Error, strMessage);
+        log(LogLevel.Error, strMessage);
+    }
+
+    public static void error(String pattern, Object arg1)
+    {
+        log(LogLevel.Error, pattern, arg1);
+    }
+
+    public static void error(String pattern, Object arg1, Object arg2)
+    {
+        log(LogLevel.Error, pattern, arg1, arg2);
+    }
+
+    public static void error(String pattern, Object arg1, Object arg2, Object arg3)
+    {
+        log(LogLevel.Error, pattern, arg1, arg2, arg3);
+    }
+
+    public static void error(String pattern, Object... args)
+    {
+        log(LogLevel.Error, pattern, args);
+    }
+
+    public static void error(Supplier<String> message)
+    {
+        log(LogLevel.Error, message);
     }
 
     public static LogWindowSource getDefaultLogSource()
     {
         return defaultLogSource;
     }
+
+    /**
+     * Включает запись лога по умолчанию в журнал в каталоге directory.
+     */
+    public static synchronized LogJournal enableJournal(Path directory) throws IOException
+    {
+        if (journal == null)
+        {
+            journal = new LogJournal(defaultLogSource, directory);
+        }
+        return journal;
+    }
+
+    public static LogJournal getJournal()
+    {
+        return journal;
+    }
 }
@@ -0,0 +1,69 @@
+package log;
+
+/**
+ * Подставляет аргументы вместо "{}" в шаблоне сообщения. Использует
+ * StringBuilder, переиспользуемый внутри потока.
+ */
+final class MessageFormatter
+{
+    private static final String PLACEHOLDER = "{}";
+    private static final int MAX_RETAINED_CAPACITY = 4096;
+
+    private static final ThreadLocal<StringBuilder> buffer =
+        ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+    private MessageFormatter()
+    {
+    }
+
+    static String format(String pattern, Object arg1)
+    {
+        return format(pattern, 1, arg1, null, null, null);
+    }
+
+    static String format(String pattern, Object arg1, Object arg2)
+    {
+        return format(pattern, 2, arg1, arg2, null, null);
+    }
+
+    static String format(String pattern, Object arg1, Object arg2, Object arg3)
+    {
+        return format(pattern, 3, arg1, arg2, arg3, null);
+    }
+
+    static String format(String pattern, Object... args)
+    {
+        return format(pattern, args.length, null, null, null, args);
+    }
+
+    private static String format(String pattern, int argCount,
+        Object arg1, Object arg2, Object arg3, Object[] args)
+    {
+        if (pattern == null)
+        {
+            return "null";
+        }
+        StringBuilder builder = buffer.get();
+        builder.setLength(0);
+        int from = 0;
+        for (int i = 0; i < argCount; i++)
+        {
+            int placeholder = pattern.indexOf(PLACEHOLDER, from);
+            if (placeholder < 0)
+            {
+                break;
+            }
+            builder.append(pattern, from, placeholder);
+            Object arg = args != null ? args[i] : i == 0 ? arg1 : i == 1 ? arg2 : arg3;
+            builder.append(arg);
+            from = placeholder + PLACEHOLDER.length();
+        }
+        builder.append(pattern, from, pattern.length());
+        String result = builder.toString();
+        if (builder.capacity() > MAX_RETAINED_CAPACITY)
+        {
+            buffer.remove();
+        }
+        return result;
+    }
+}
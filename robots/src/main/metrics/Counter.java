@@ -0,0 +1,31 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Монотонный счётчик событий. Увеличение не блокирует и не выделяет
+ * память, даже когда счётчик увеличивают из многих потоков.
+ */
+public final class Counter
+{
+    private final LongAdder m_value = new LongAdder();
+
+    Counter()
+    {
+    }
+
+    public void increment()
+    {
+        m_value.increment();
+    }
+
+    public void add(long delta)
+    {
+        m_value.add(delta);
+    }
+
+    public long get()
+    {
+        return m_value.sum();
+    }
+}
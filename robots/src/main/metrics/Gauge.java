@@ -0,0 +1,11 @@
+package metrics;
+
+/**
+ * Текущее значение величины, которое вычисляется при чтении, например
+ * число записей в буфере лога.
+ */
+@FunctionalInterface
+public interface Gauge
+{
+    double value();
+}
@@ -0,0 +1,121 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма неотрицательных значений (обычно длительностей в наносекундах)
+ * с логарифмически-линейными корзинами, как в HdrHistogram: каждый интервал
+ * [2^k, 2^(k+1)) делится на SUB_BUCKETS равных корзин, так что любой
+ * перцентиль известен с относительной точностью 1/SUB_BUCKETS при
+ * фиксированном размере гистограммы на весь диапазон long.
+ *
+ * Запись - один атомарный инкремент корзины без блокировок и выделения
+ * памяти. Чтение идёт по живым счётчикам и может не учесть записи,
+ * сделанные во время чтения.
+ */
+public final class Histogram
+{
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray m_buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder m_count = new LongAdder();
+    private final LongAdder m_sum = new LongAdder();
+    private final AtomicLong m_max = new AtomicLong();
+
+    Histogram()
+    {
+    }
+
+    /**
+     * Отрицательные значения считаются нулём.
+     */
+    public void record(long value)
+    {
+        value = Math.max(value, 0);
+        m_buckets.incrementAndGet(bucketOf(value));
+        m_count.increment();
+        m_sum.add(value);
+        long max = m_max.get();
+        while (value > max && !m_max.compareAndSet(max, value))
+        {
+            max = m_max.get();
+        }
+    }
+
+    /**
+     * Записывает время, прошедшее с startNanos по System.nanoTime().
+     */
+    public void recordSince(long startNanos)
+    {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount()
+    {
+        return m_count.sum();
+    }
+
+    public double getMean()
+    {
+        long count = m_count.sum();
+        return count == 0 ? 0 : (double)m_sum.sum() / count;
+    }
+
+    public long getMax()
+    {
+        return m_max.get();
+    }
+
+    /**
+     * Наибольшее значение, которое попадает в ту же корзину, что и значение
+     * перцентиля percentile (от 0 до 100), но не больше максимума.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            count += m_buckets.get(bucket);
+        }
+        if (count == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(Math.min(percentile, 100) / 100 * count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+        {
+            seen += m_buckets.get(bucket);
+            if (seen >= rank)
+            {
+                return Math.min(highestValueOf(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int)value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int)(value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestValueOf(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,138 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * Только для чтения показывает метрики реестра атрибутами JMX: счётчики
+ * и датчики под своими именами, гистограммы - атрибутами имя.count,
+ * имя.mean, имя.p50, имя.p99, имя.p999 и имя.max. Набор атрибутов
+ * перечитывается из реестра при каждом запросе описания.
+ */
+final class MetricsMBean implements DynamicMBean
+{
+    private static final String[] HISTOGRAM_SUFFIXES = { ".count", ".mean", ".p50", ".p99", ".p999", ".max" };
+
+    private final MetricsRegistry m_registry;
+
+    MetricsMBean(MetricsRegistry registry)
+    {
+        m_registry = registry;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException
+    {
+        Counter counter = m_registry.getCounters().get(attribute);
+        if (counter != null)
+        {
+            return counter.get();
+        }
+        Gauge gauge = m_registry.getGauges().get(attribute);
+        if (gauge != null)
+        {
+            return gauge.value();
+        }
+        int dot = attribute.lastIndexOf('.');
+        Histogram histogram = dot < 0 ? null : m_registry.getHistograms().get(attribute.substring(0, dot));
+        if (histogram != null)
+        {
+            switch (attribute.substring(dot))
+            {
+            case ".count":
+                return histogram.getCount();
+            case ".mean":
+                return histogram.getMean();
+            case ".p50":
+                return histogram.getValueAtPercentile(50);
+            case ".p99":
+                return histogram.getValueAtPercentile(99);
+            case ".p999":
+                return histogram.getValueAtPercentile(99.9);
+            case ".max":
+                return histogram.getMax();
+            default:
+                break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes)
+    {
+        AttributeList result = new AttributeList();
+        for (String attribute : attributes)
+        {
+            try
+            {
+                result.add(new Attribute(attribute, getAttribute(attribute)));
+            }
+            catch (AttributeNotFoundException e)
+            {
+                // по контракту DynamicMBean неизвестные атрибуты пропускаются
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException
+    {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes)
+    {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+    {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo()
+    {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (String name : m_registry.getCounters().keySet())
+        {
+            attributes.add(attribute(name, Long.class, "counter"));
+        }
+        for (String name : m_registry.getGauges().keySet())
+        {
+            attributes.add(attribute(name, Double.class, "gauge"));
+        }
+        for (Map.Entry<String, Histogram> entry : m_registry.getHistograms().entrySet())
+        {
+            for (String suffix : HISTOGRAM_SUFFIXES)
+            {
+                Class<?> type = suffix.equals(".mean") ? Double.class : Long.class;
+                String description = suffix.equals(".count") ? "histogram sample count" : "histogram, nanoseconds";
+                attributes.add(attribute(entry.getKey() + suffix, type, description));
+            }
+        }
+        return new MBeanInfo(getClass().getName(), "Robots runtime metrics",
+            attributes.toArray(new MBeanAttributeInfo[0]), new MBeanConstructorInfo[0],
+            new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+    }
+
+    private static MBeanAttributeInfo attribute(String name, Class<?> type, String description)
+    {
+        return new MBeanAttributeInfo(name, type.getName(), description, true, false, false);
+    }
+}
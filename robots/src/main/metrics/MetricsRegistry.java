@@ -0,0 +1,98 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Именованные счётчики, гистограммы и датчики. Метрики создаются один раз,
+ * обычно в статических полях инструментируемых классов, и дальше
+ * обновляются без обращения к реестру. Читатели (окно метрик, JMX)
+ * получают копии списков метрик и сверяют {@link #getVersion()}, чтобы
+ * узнать о новых.
+ */
+public final class MetricsRegistry
+{
+    public static final String DEFAULT_OBJECT_NAME = "robots:type=Metrics";
+
+    private static final MetricsRegistry defaultRegistry = new MetricsRegistry();
+
+    private final Map<String, Counter> m_counters = new LinkedHashMap<>();
+    private final Map<String, Histogram> m_histograms = new LinkedHashMap<>();
+    private final Map<String, Gauge> m_gauges = new LinkedHashMap<>();
+    private volatile int m_version;
+
+    public static MetricsRegistry getDefault()
+    {
+        return defaultRegistry;
+    }
+
+    public synchronized Counter counter(String name)
+    {
+        Counter counter = m_counters.get(name);
+        if (counter == null)
+        {
+            counter = new Counter();
+            m_counters.put(name, counter);
+            m_version++;
+        }
+        return counter;
+    }
+
+    public synchronized Histogram histogram(String name)
+    {
+        Histogram histogram = m_histograms.get(name);
+        if (histogram == null)
+        {
+            histogram = new Histogram();
+            m_histograms.put(name, histogram);
+            m_version++;
+        }
+        return histogram;
+    }
+
+    /**
+     * Заменяет датчик с тем же именем, если он уже был.
+     */
+    public synchronized void gauge(String name, Gauge gauge)
+    {
+        m_gauges.put(name, gauge);
+        m_version++;
+    }
+
+    /**
+     * Меняется при каждой регистрации метрики.
+     */
+    public int getVersion()
+    {
+        return m_version;
+    }
+
+    public synchronized Map<String, Counter> getCounters()
+    {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(m_counters));
+    }
+
+    public synchronized Map<String, Histogram> getHistograms()
+    {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(m_histograms));
+    }
+
+    public synchronized Map<String, Gauge> getGauges()
+    {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(m_gauges));
+    }
+
+    /**
+     * Публикует все метрики реестра в платформенном MBean-сервере,
+     * например для jconsole или VisualVM.
+     */
+    public void registerMBean(String objectName) throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(this), new ObjectName(objectName));
+    }
+}
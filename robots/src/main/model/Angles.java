@@ -0,0 +1,61 @@
+package model;
+
+/**
+ * Операции с углами в радианах за постоянное время. Курс хранится
+ * в диапазоне [0, 2π), разность курсов — в (-π, π], так что знак разности
+ * сразу даёт кратчайшее направление поворота, в том числе через 0/2π.
+ */
+public final class Angles
+{
+    public static final double TWO_PI = 2 * Math.PI;
+
+    private Angles()
+    {
+    }
+
+    /**
+     * Приводит угол к диапазону [0, 2π). NaN и бесконечности дают NaN.
+     */
+    public static double normalize(double angle)
+    {
+        if (angle >= 0 && angle < TWO_PI)
+        {
+            return angle;
+        }
+        double result = angle % TWO_PI;
+        if (result < 0)
+        {
+            result += TWO_PI;
+        }
+        // -ε + 2π округляется до 2π
+        return result < TWO_PI ? result : 0;
+    }
+
+    /**
+     * Кратчайший поворот от from к to в диапазоне (-π, π].
+     * Положительное значение — поворот против часовой стрелки
+     * (в сторону роста угла).
+     */
+    public static double difference(double from, double to)
+    {
+        double result = (to - from) % TWO_PI;
+        if (result > Math.PI)
+        {
+            result -= TWO_PI;
+        }
+        else if (result <= -Math.PI)
+        {
+            result += TWO_PI;
+        }
+        return result;
+    }
+
+    /**
+     * Направление поворота от курса heading к курсу target:
+     * 1, -1 или 0, если курсы совпадают.
+     */
+    public static int turnDirection(double heading, double target)
+    {
+        return (int)Math.signum(difference(heading, target));
+    }
+}
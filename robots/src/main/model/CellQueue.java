@@ -0,0 +1,83 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Двоичная куча номеров клеток с ключами для поиска путей. Уменьшение ключа
+ * не поддерживается: клетку кладут повторно, а устаревшие копии вызывающий
+ * отбрасывает сам при извлечении.
+ */
+final class CellQueue
+{
+    private int[] m_cells = new int[64];
+    private double[] m_keys = new double[64];
+    private int m_size;
+
+    boolean isEmpty()
+    {
+        return m_size == 0;
+    }
+
+    void clear()
+    {
+        m_size = 0;
+    }
+
+    void push(int cell, double key)
+    {
+        if (m_size == m_cells.length)
+        {
+            m_cells = Arrays.copyOf(m_cells, m_size * 2);
+            m_keys = Arrays.copyOf(m_keys, m_size * 2);
+        }
+        int index = m_size++;
+        while (index > 0)
+        {
+            int parent = (index - 1) >>> 1;
+            if (m_keys[parent] <= key)
+            {
+                break;
+            }
+            m_cells[index] = m_cells[parent];
+            m_keys[index] = m_keys[parent];
+            index = parent;
+        }
+        m_cells[index] = cell;
+        m_keys[index] = key;
+    }
+
+    double topKey()
+    {
+        return m_keys[0];
+    }
+
+    int pop()
+    {
+        int cell = m_cells[0];
+        int lastCell = m_cells[--m_size];
+        double lastKey = m_keys[m_size];
+        int index = 0;
+        while (true)
+        {
+            int child = 2 * index + 1;
+            if (child >= m_size)
+            {
+                break;
+            }
+            if (child + 1 < m_size && m_keys[child + 1] < m_keys[child])
+            {
+                child++;
+            }
+            if (m_keys[child] >= lastKey)
+            {
+                break;
+            }
+            m_cells[index] = m_cells[child];
+            m_keys[index] = m_keys[child];
+            index = child;
+        }
+        m_cells[index] = lastCell;
+        m_keys[index] = lastKey;
+        return cell;
+    }
+}
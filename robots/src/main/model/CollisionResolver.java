@@ -0,0 +1,215 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Разводит пересёкшихся роботов и выталкивает их из препятствий после шага.
+ * Роботы считаются кругами радиуса m_robotRadius. Соседи ищутся через
+ * {@link SpatialGrid}, поэтому стоимость растёт примерно как N, а не N².
+ * Смещения сначала считаются для всех роботов по положениям до разведения
+ * и только потом применяются, так что результат не зависит от порядка обхода.
+ */
+public class CollisionResolver
+{
+    public static final double DEFAULT_ROBOT_RADIUS = 5;
+    private static final int INITIAL_NEIGHBORS = 64;
+
+    private final double m_robotRadius;
+    private int[] m_neighbors = new int[INITIAL_NEIGHBORS];
+    private final ObstacleMap.CellRange m_cells = new ObstacleMap.CellRange();
+    private double[] m_shiftX = new double[0];
+    private double[] m_shiftY = new double[0];
+    private int[] m_obstacleStamp = new int[0];
+    private final double[] m_normal = new double[2];
+
+    public CollisionResolver()
+    {
+        this(DEFAULT_ROBOT_RADIUS);
+    }
+
+    public CollisionResolver(double robotRadius)
+    {
+        m_robotRadius = robotRadius;
+    }
+
+    public double getRobotRadius()
+    {
+        return m_robotRadius;
+    }
+
+    /**
+     * grid должен быть обновлён по текущим положениям роботов. Возвращает,
+     * сдвинут ли хоть один робот: тогда grid отстаёт от мира.
+     */
+    public boolean resolve(RobotWorld world, SpatialGrid grid, ObstacleMap obstacles, boolean robotCollisions)
+    {
+        int count = world.size();
+        boolean moved = false;
+        if (robotCollisions && count > 1)
+        {
+            moved = separateRobots(world, grid, count);
+        }
+        if (!obstacles.isEmpty())
+        {
+            moved |= pushOutOfObstacles(world, obstacles, count);
+        }
+        return moved;
+    }
+
+    private boolean separateRobots(RobotWorld world, SpatialGrid grid, int count)
+    {
+        if (m_shiftX.length < count)
+        {
+            m_shiftX = new double[count];
+            m_shiftY = new double[count];
+        }
+        double minDistance = 2 * m_robotRadius;
+        for (int i = 0; i < count; i++)
+        {
+            double x = world.getPositionX(i);
+            double y = world.getPositionY(i);
+            double shiftX = 0;
+            double shiftY = 0;
+            int found = grid.findInRange(x, y, minDistance, m_neighbors);
+            if (found > m_neighbors.length)
+            {
+                m_neighbors = new int[Integer.highestOneBit(found) << 1];
+                found = grid.findInRange(x, y, minDistance, m_neighbors);
+            }
+            // порядок в списках сетки зависит от истории перемещений, а от порядка
+            // сложения зависят младшие биты смещения; с сортировкой всех соседей
+            // результат определяется только положениями, что нужно для
+            // воспроизведения записей
+            Arrays.sort(m_neighbors, 0, found);
+            for (int k = 0; k < found; k++)
+            {
+                int j = m_neighbors[k];
+                if (j == i)
+                {
+                    continue;
+                }
+                double diffX = x - world.getPositionX(j);
+                double diffY = y - world.getPositionY(j);
+                double distance = Math.sqrt(diffX * diffX + diffY * diffY);
+                if (distance >= minDistance)
+                {
+                    continue;
+                }
+                if (distance == 0)
+                {
+                    // совпавших роботов разводим в стороны по номерам
+                    diffX = i < j ? -1 : 1;
+                    diffY = 0;
+                    distance = 1;
+                }
+                double push = (minDistance - distance) / 2 / distance;
+                shiftX += diffX * push;
+                shiftY += diffY * push;
+            }
+            m_shiftX[i] = shiftX;
+            m_shiftY[i] = shiftY;
+        }
+        boolean moved = false;
+        for (int i = 0; i < count; i++)
+        {
+            if (m_shiftX[i] != 0 || m_shiftY[i] != 0)
+            {
+                world.setPosition(i, world.getPositionX(i) + m_shiftX[i], world.getPositionY(i) + m_shiftY[i]);
+                moved = true;
+            }
+        }
+        return moved;
+    }
+
+    private boolean pushOutOfObstacles(RobotWorld world, ObstacleMap obstacles, int count)
+    {
+        boolean anyMoved = false;
+        if (m_obstacleStamp.length < obstacles.size())
+        {
+            m_obstacleStamp = new int[obstacles.size()];
+        }
+        Arrays.fill(m_obstacleStamp, 0, obstacles.size(), -1);
+        double radius = m_robotRadius;
+        for (int i = 0; i < count; i++)
+        {
+            double x = world.getPositionX(i);
+            double y = world.getPositionY(i);
+            boolean moved = false;
+            m_cells.set(obstacles, x - radius, y - radius, x + radius, y + radius);
+            for (int cell = 0; cell < m_cells.size(); cell++)
+            {
+                int bucket = m_cells.bucket(cell);
+                for (int k = obstacles.bucketStart(bucket); k < obstacles.bucketEnd(bucket); k++)
+                {
+                    int obstacle = obstacles.bucketItem(k);
+                    if (m_obstacleStamp[obstacle] == i)
+                    {
+                        continue;
+                    }
+                    m_obstacleStamp[obstacle] = i;
+                    double outside = obstacles.distanceOutside(obstacle, x, y);
+                    if (outside >= radius)
+                    {
+                        continue;
+                    }
+                    double[] normal = normal(obstacles, obstacle, x, y);
+                    double depth = radius - outside;
+                    x += normal[0] * depth;
+                    y += normal[1] * depth;
+                    moved = true;
+                }
+            }
+            if (moved)
+            {
+                world.setPosition(i, x, y);
+                anyMoved = true;
+            }
+        }
+        return anyMoved;
+    }
+
+    /**
+     * Направление, в котором точку нужно сдвинуть, чтобы вытолкнуть из препятствия.
+     */
+    private double[] normal(ObstacleMap obstacles, int obstacle, double x, double y)
+    {
+        double normalX;
+        double normalY;
+        if (obstacle < obstacles.getRectangleCount())
+        {
+            double left = obstacles.getRectangleX(obstacle);
+            double top = obstacles.getRectangleY(obstacle);
+            double right = left + obstacles.getRectangleWidth(obstacle);
+            double bottom = top + obstacles.getRectangleHeight(obstacle);
+            double nearestX = Math.max(left, Math.min(x, right));
+            double nearestY = Math.max(top, Math.min(y, bottom));
+            normalX = x - nearestX;
+            normalY = y - nearestY;
+            if (normalX == 0 && normalY == 0)
+            {
+                // центр внутри прямоугольника - выталкиваем через ближайшую сторону
+                double toLeft = x - left;
+                double toRight = right - x;
+                double toTop = y - top;
+                double toBottom = bottom - y;
+                double nearest = Math.min(Math.min(toLeft, toRight), Math.min(toTop, toBottom));
+                normalX = nearest == toLeft ? -1 : nearest == toRight ? 1 : 0;
+                normalY = normalX != 0 ? 0 : nearest == toTop ? -1 : 1;
+            }
+        }
+        else
+        {
+            int circle = obstacle - obstacles.getRectangleCount();
+            normalX = x - obstacles.getCircleX(circle);
+            normalY = y - obstacles.getCircleY(circle);
+            if (normalX == 0 && normalY == 0)
+            {
+                normalX = 1;
+            }
+        }
+        double length = Math.sqrt(normalX * normalX + normalY * normalY);
+        m_normal[0] = normalX / length;
+        m_normal[1] = normalY / length;
+        return m_normal;
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Поле направлений к одной целевой клетке: для каждой клетки сетки хранится
+ * следующая клетка кратчайшего пути к цели. Строится одним проходом Дейкстры
+ * от цели и обслуживает сразу всех роботов, едущих к этой цели.
+ */
+public final class FlowField
+{
+    private final int m_targetCell;
+    private final int[] m_next;
+
+    public FlowField(OccupancyGrid grid, int targetCell)
+    {
+        m_targetCell = targetCell;
+        m_next = new int[grid.size()];
+        Arrays.fill(m_next, -1);
+        if (grid.isBlocked(targetCell))
+        {
+            return;
+        }
+        double[] cost = new double[grid.size()];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        CellQueue queue = new CellQueue();
+        cost[targetCell] = 0;
+        m_next[targetCell] = targetCell;
+        queue.push(targetCell, 0);
+        while (!queue.isEmpty())
+        {
+            double key = queue.topKey();
+            int cell = queue.pop();
+            if (key > cost[cell])
+            {
+                continue;
+            }
+            for (int direction = 0; direction < OccupancyGrid.DIRECTIONS; direction++)
+            {
+                int neighbor = grid.neighbor(cell, direction);
+                if (neighbor < 0)
+                {
+                    continue;
+                }
+                double newCost = cost[cell] + OccupancyGrid.stepCost(direction);
+                if (newCost < cost[neighbor])
+                {
+                    cost[neighbor] = newCost;
+                    m_next[neighbor] = cell;
+                    queue.push(neighbor, newCost);
+                }
+            }
+        }
+    }
+
+    public int getTargetCell()
+    {
+        return m_targetCell;
+    }
+
+    /**
+     * Следующая клетка пути к цели; сама цель для целевой клетки и -1,
+     * если из клетки до цели не добраться.
+     */
+    public int next(int cell)
+    {
+        return m_next[cell];
+    }
+}
@@ -0,0 +1,76 @@
+package model;
+
+/**
+ * Вычисляет один шаг движения для диапазона роботов мира. Синусы и косинусы
+ * курса хранятся в мире и переиспользуются на следующем шаге, так что за шаг
+ * на робота приходится по одному sin и cos нового курса.
+ */
+public interface KinematicsKernel
+{
+    String VECTOR_KERNEL_CLASS = "model.VectorKinematics";
+    String VECTOR_MODULE = "jdk.incubator.vector";
+
+    int update(RobotWorld world, int from, int to, double duration);
+
+    /**
+     * Сколько роботов ядро считает за раз. Диапазон, начинающийся с кратного
+     * этому числу индекса, считается бит в бит так же, как в проходе по всему
+     * миру; на такие диапазоны мир делит {@link ParallelWorldUpdater}.
+     */
+    default int laneCount()
+    {
+        return 1;
+    }
+
+    static KinematicsKernel scalar()
+    {
+        return ScalarKinematics.instance;
+    }
+
+    /**
+     * Векторное ядро на jdk.incubator.vector или null, если модуль не подключён
+     * (нужен флаг --add-modules jdk.incubator.vector).
+     */
+    static KinematicsKernel vector()
+    {
+        if (!ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent())
+        {
+            return null;
+        }
+        try
+        {
+            return (KinematicsKernel)Class.forName(VECTOR_KERNEL_CLASS)
+                .getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Векторное ядро, если оно доступно и не выключено свойством
+     * robots.kinematics=scalar, иначе скалярное.
+     */
+    static KinematicsKernel best()
+    {
+        if (!"scalar".equals(System.getProperty("robots.kinematics")))
+        {
+            KinematicsKernel vector = KernelHolder.vector;
+            if (vector != null)
+            {
+                return vector;
+            }
+        }
+        return scalar();
+    }
+
+    final class KernelHolder
+    {
+        private static final KinematicsKernel vector = vector();
+
+        private KernelHolder()
+        {
+        }
+    }
+}
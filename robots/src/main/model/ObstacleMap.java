@@ -0,0 +1,410 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Неподвижные препятствия: прямоугольники и круги. Карта не меняется после
+ * создания, поэтому её можно читать из любого потока. Для быстрого поиска
+ * препятствия разложены по клеткам хешированной сетки.
+ *
+ * Текстовый формат - по препятствию на строку, '#' начинает комментарий:
+ * <pre>
+ * rect x y width height
+ * circle x y radius
+ * </pre>
+ * Координаты не больше {@link #MAX_COORDINATE} по модулю, размеры
+ * и радиусы неотрицательны и не больше того же предела.
+ */
+public final class ObstacleMap
+{
+    public static final double DEFAULT_CELL_SIZE = 64;
+    public static final double MAX_COORDINATE = 1e7;
+    private static final ObstacleMap empty = new ObstacleMap(new double[0], 0, new double[0], 0);
+
+    private final double[] m_rectangles;
+    private final int m_rectangleCount;
+    private final double[] m_circles;
+    private final int m_circleCount;
+
+    private final double m_cellSize = DEFAULT_CELL_SIZE;
+    private final int m_bucketMask;
+    private final int[] m_bucketStart;
+    private final int[] m_bucketItems;
+
+    /**
+     * rectangles - четвёрки (x, y, width, height), circles - тройки (x, y, radius).
+     * Значения вне допустимых бросают IllegalArgumentException.
+     */
+    public ObstacleMap(double[] rectangles, int rectangleCount, double[] circles, int circleCount)
+    {
+        for (int i = 0; i < rectangleCount; i++)
+        {
+            checkRectangle(rectangles[i * 4], rectangles[i * 4 + 1], rectangles[i * 4 + 2], rectangles[i * 4 + 3]);
+        }
+        for (int i = 0; i < circleCount; i++)
+        {
+            checkCircle(circles[i * 3], circles[i * 3 + 1], circles[i * 3 + 2]);
+        }
+        m_rectangles = Arrays.copyOf(rectangles, rectangleCount * 4);
+        m_rectangleCount = rectangleCount;
+        m_circles = Arrays.copyOf(circles, circleCount * 3);
+        m_circleCount = circleCount;
+
+        int buckets = Integer.highestOneBit(Math.max(16, size() * 4) - 1) << 1;
+        m_bucketMask = buckets - 1;
+        m_bucketStart = new int[buckets + 1];
+        int[] stamps = new int[buckets];
+        CellRange range = new CellRange();
+        for (int obstacle = 0; obstacle < size(); obstacle++)
+        {
+            forEachBucket(obstacle, range, stamps, bucket -> m_bucketStart[bucket + 1]++);
+        }
+        Arrays.fill(stamps, 0);
+        for (int bucket = 0; bucket < buckets; bucket++)
+        {
+            m_bucketStart[bucket + 1] += m_bucketStart[bucket];
+        }
+        m_bucketItems = new int[m_bucketStart[buckets]];
+        int[] fill = Arrays.copyOf(m_bucketStart, buckets);
+        for (int obstacle = 0; obstacle < size(); obstacle++)
+        {
+            final int item = obstacle;
+            forEachBucket(obstacle, range, stamps, bucket -> m_bucketItems[fill[bucket]++] = item);
+        }
+    }
+
+    static void checkRectangle(double x, double y, double width, double height)
+    {
+        if (!isCoordinate(x) || !isCoordinate(y) || !isSize(width) || !isSize(height))
+        {
+            throw new IllegalArgumentException("rect " + x + " " + y + " " + width + " " + height);
+        }
+    }
+
+    static void checkCircle(double x, double y, double radius)
+    {
+        if (!isCoordinate(x) || !isCoordinate(y) || !isSize(radius))
+        {
+            throw new IllegalArgumentException("circle " + x + " " + y + " " + radius);
+        }
+    }
+
+    private static boolean isCoordinate(double value)
+    {
+        return Math.abs(value) <= MAX_COORDINATE;
+    }
+
+    private static boolean isSize(double value)
+    {
+        return value >= 0 && value <= MAX_COORDINATE;
+    }
+
+    public static ObstacleMap empty()
+    {
+        return empty;
+    }
+
+    public static ObstacleMap load(Path path) throws IOException
+    {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+        {
+            return parse(reader);
+        }
+    }
+
+    public static ObstacleMap parse(Reader source) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(source);
+        double[] rectangles = new double[64];
+        double[] circles = new double[48];
+        int rectangleCount = 0;
+        int circleCount = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null)
+        {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+            {
+                line = line.substring(0, comment);
+            }
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length == 1 && parts[0].isEmpty())
+            {
+                continue;
+            }
+            try
+            {
+                if (parts[0].equals("rect") && parts.length == 5)
+                {
+                    if (rectangleCount * 4 + 4 > rectangles.length)
+                    {
+                        rectangles = Arrays.copyOf(rectangles, rectangles.length * 2);
+                    }
+                    for (int i = 0; i < 4; i++)
+                    {
+                        rectangles[rectangleCount * 4 + i] = Double.parseDouble(parts[i + 1]);
+                    }
+                    checkRectangle(rectangles[rectangleCount * 4], rectangles[rectangleCount * 4 + 1],
+                        rectangles[rectangleCount * 4 + 2], rectangles[rectangleCount * 4 + 3]);
+                    rectangleCount++;
+                    continue;
+                }
+                if (parts[0].equals("circle") && parts.length == 4)
+                {
+                    if (circleCount * 3 + 3 > circles.length)
+                    {
+                        circles = Arrays.copyOf(circles, circles.length * 2);
+                    }
+                    for (int i = 0; i < 3; i++)
+                    {
+                        circles[circleCount * 3 + i] = Double.parseDouble(parts[i + 1]);
+                    }
+                    checkCircle(circles[circleCount * 3], circles[circleCount * 3 + 1], circles[circleCount * 3 + 2]);
+                    circleCount++;
+                    continue;
+                }
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IOException("Bad number at line " + lineNumber + ": " + line, e);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IOException("Value out of range at line " + lineNumber + ": " + line, e);
+            }
+            throw new IOException("Unknown obstacle at line " + lineNumber + ": " + line);
+        }
+        return new ObstacleMap(rectangles, rectangleCount, circles, circleCount);
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Препятствия нумеруются подряд: сначала прямоугольники, потом круги.
+     */
+    public int size()
+    {
+        return m_rectangleCount + m_circleCount;
+    }
+
+    public int getRectangleCount()
+    {
+        return m_rectangleCount;
+    }
+
+    public int getCircleCount()
+    {
+        return m_circleCount;
+    }
+
+    public double getRectangleX(int rectangle)
+    {
+        return m_rectangles[rectangle * 4];
+    }
+
+    public double getRectangleY(int rectangle)
+    {
+        return m_rectangles[rectangle * 4 + 1];
+    }
+
+    public double getRectangleWidth(int rectangle)
+    {
+        return m_rectangles[rectangle * 4 + 2];
+    }
+
+    public double getRectangleHeight(int rectangle)
+    {
+        return m_rectangles[rectangle * 4 + 3];
+    }
+
+    public double getCircleX(int circle)
+    {
+        return m_circles[circle * 3];
+    }
+
+    public double getCircleY(int circle)
+    {
+        return m_circles[circle * 3 + 1];
+    }
+
+    public double getCircleRadius(int circle)
+    {
+        return m_circles[circle * 3 + 2];
+    }
+
+    /**
+     * Лежит ли точка внутри какого-нибудь препятствия, расширенного на margin.
+     */
+    public boolean isBlocked(double x, double y, double margin)
+    {
+        CellRange range = new CellRange();
+        range.set(this, x - margin, y - margin, x + margin, y + margin);
+        for (int k = 0; k < range.size(); k++)
+        {
+            int bucket = range.bucket(k);
+            for (int i = m_bucketStart[bucket]; i < m_bucketStart[bucket + 1]; i++)
+            {
+                if (distanceOutside(m_bucketItems[i], x, y) < margin)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Расстояние от точки до границы препятствия; отрицательное, если точка внутри.
+     */
+    double distanceOutside(int obstacle, double x, double y)
+    {
+        if (obstacle < m_rectangleCount)
+        {
+            double left = getRectangleX(obstacle);
+            double top = getRectangleY(obstacle);
+            double right = left + getRectangleWidth(obstacle);
+            double bottom = top + getRectangleHeight(obstacle);
+            double outsideX = Math.max(left - x, x - right);
+            double outsideY = Math.max(top - y, y - bottom);
+            if (outsideX <= 0 && outsideY <= 0)
+            {
+                return Math.max(outsideX, outsideY);
+            }
+            double diffX = Math.max(outsideX, 0);
+            double diffY = Math.max(outsideY, 0);
+            return Math.sqrt(diffX * diffX + diffY * diffY);
+        }
+        int circle = obstacle - m_rectangleCount;
+        double diffX = x - getCircleX(circle);
+        double diffY = y - getCircleY(circle);
+        return Math.sqrt(diffX * diffX + diffY * diffY) - getCircleRadius(circle);
+    }
+
+    double getCellSize()
+    {
+        return m_cellSize;
+    }
+
+    /**
+     * Номер клетки в пределах int: бесконечные и огромные координаты
+     * дают крайние клетки, NaN - нулевую.
+     */
+    long cellOf(double coordinate)
+    {
+        double cell = Math.floor(coordinate / m_cellSize);
+        return (long)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, cell));
+    }
+
+    int bucketOf(long cellX, long cellY)
+    {
+        int hash = (int)cellX * 0x9E3779B1 + (int)cellY * 0x85EBCA77;
+        return (hash ^ (hash >>> 16)) & m_bucketMask;
+    }
+
+    int bucketStart(int bucket)
+    {
+        return m_bucketStart[bucket];
+    }
+
+    int bucketEnd(int bucket)
+    {
+        return m_bucketStart[bucket + 1];
+    }
+
+    int bucketItem(int index)
+    {
+        return m_bucketItems[index];
+    }
+
+    private interface BucketAction
+    {
+        void accept(int bucket);
+    }
+
+    /**
+     * Корзины прямоугольника клеток для обхода одним циклом по k от 0 до
+     * {@link #size()}. Если клеток больше, чем корзин, обходятся все
+     * корзины по одному разу, так что обход ограничен числом корзин
+     * при любом размере прямоугольника.
+     */
+    static final class CellRange
+    {
+        private ObstacleMap m_map;
+        private long m_fromX;
+        private long m_fromY;
+        private long m_width;
+        private int m_size;
+        private boolean m_allBuckets;
+
+        void set(ObstacleMap map, double left, double top, double right, double bottom)
+        {
+            m_map = map;
+            m_fromX = map.cellOf(left);
+            m_fromY = map.cellOf(top);
+            m_width = Math.max(map.cellOf(right) - m_fromX + 1, 0);
+            long height = Math.max(map.cellOf(bottom) - m_fromY + 1, 0);
+            int buckets = map.m_bucketMask + 1;
+            // ширина и высота не больше 2^32, так что их произведение проверяется после них
+            m_allBuckets = m_width > buckets || height > buckets || m_width * height > buckets;
+            m_size = m_allBuckets ? buckets : (int)(m_width * height);
+        }
+
+        int size()
+        {
+            return m_size;
+        }
+
+        int bucket(int k)
+        {
+            return m_allBuckets ? k : m_map.bucketOf(m_fromX + k % m_width, m_fromY + k / m_width);
+        }
+    }
+
+    private void forEachBucket(int obstacle, CellRange range, int[] stamps, BucketAction action)
+    {
+        double left;
+        double top;
+        double right;
+        double bottom;
+        if (obstacle < m_rectangleCount)
+        {
+            left = getRectangleX(obstacle);
+            top = getRectangleY(obstacle);
+            right = left + getRectangleWidth(obstacle);
+            bottom = top + getRectangleHeight(obstacle);
+        }
+        else
+        {
+            int circle = obstacle - m_rectangleCount;
+            double radius = getCircleRadius(circle);
+            left = getCircleX(circle) - radius;
+            top = getCircleY(circle) - radius;
+            right = getCircleX(circle) + radius;
+            bottom = getCircleY(circle) + radius;
+        }
+        // препятствие попадает в каждую корзину не больше одного раза
+        int stamp = obstacle + 1;
+        range.set(this, left, top, right, bottom);
+        for (int k = 0; k < range.size(); k++)
+        {
+            int bucket = range.bucket(k);
+            if (stamps[bucket] == stamp)
+            {
+                continue;
+            }
+            stamps[bucket] = stamp;
+            action.accept(bucket);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package model;
+
+/**
+ * Сетка проходимости, построенная по {@link ObstacleMap}. Покрывает
+ * прямоугольник вокруг всех препятствий с запасом; клетки за его пределами
+ * считаются свободными и в сетку не входят. Клетка занята, если её центр
+ * ближе margin к какому-нибудь препятствию.
+ *
+ * Клеток не больше {@link #MAX_CELLS}: если препятствия разбросаны
+ * так широко, что клеток заданного размера было бы больше, размер
+ * клетки удваивается, пока они не поместятся. Путь по такой сетке
+ * грубее, но память и время построения под блокировкой движка
+ * ограничены.
+ */
+public final class OccupancyGrid
+{
+    public static final int DIRECTIONS = 8;
+    public static final int MAX_CELLS = 1 << 20;
+    private static final int[] directionX = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] directionY = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final double DIAGONAL_COST = Math.sqrt(2);
+
+    private final double m_originX;
+    private final double m_originY;
+    private final double m_cellSize;
+    private final int m_width;
+    private final int m_height;
+    private final boolean[] m_blocked;
+
+    public OccupancyGrid(ObstacleMap obstacles, double cellSize, double margin, double padding)
+    {
+        double left = Double.POSITIVE_INFINITY;
+        double top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+        double bottom = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < obstacles.getRectangleCount(); i++)
+        {
+            left = Math.min(left, obstacles.getRectangleX(i));
+            top = Math.min(top, obstacles.getRectangleY(i));
+            right = Math.max(right, obstacles.getRectangleX(i) + obstacles.getRectangleWidth(i));
+            bottom = Math.max(bottom, obstacles.getRectangleY(i) + obstacles.getRectangleHeight(i));
+        }
+        for (int i = 0; i < obstacles.getCircleCount(); i++)
+        {
+            double radius = obstacles.getCircleRadius(i);
+            left = Math.min(left, obstacles.getCircleX(i) - radius);
+            top = Math.min(top, obstacles.getCircleY(i) - radius);
+            right = Math.max(right, obstacles.getCircleX(i) + radius);
+            bottom = Math.max(bottom, obstacles.getCircleY(i) + radius);
+        }
+        if (obstacles.isEmpty())
+        {
+            m_cellSize = cellSize;
+            m_originX = 0;
+            m_originY = 0;
+            m_width = 0;
+            m_height = 0;
+            m_blocked = new boolean[0];
+            return;
+        }
+        if (!Double.isFinite(left - padding) || !Double.isFinite(right + padding)
+            || !Double.isFinite(top - padding) || !Double.isFinite(bottom + padding) || !(cellSize > 0))
+        {
+            throw new IllegalArgumentException("Obstacles do not fit a grid: " + left + ", " + top + " - "
+                + right + ", " + bottom + ", cell " + cellSize);
+        }
+        double size = cellSize;
+        double width;
+        double height;
+        while (true)
+        {
+            double originX = Math.floor((left - padding) / size) * size;
+            double originY = Math.floor((top - padding) / size) * size;
+            width = Math.ceil((right + padding - originX) / size);
+            height = Math.ceil((bottom + padding - originY) / size);
+            if (width * height <= MAX_CELLS)
+            {
+                m_originX = originX;
+                m_originY = originY;
+                break;
+            }
+            size *= 2;
+        }
+        m_cellSize = size;
+        m_width = (int)width;
+        m_height = (int)height;
+        m_blocked = new boolean[m_width * m_height];
+        for (int cell = 0; cell < m_blocked.length; cell++)
+        {
+            m_blocked[cell] = obstacles.isBlocked(centerX(cell), centerY(cell), margin);
+        }
+    }
+
+    /**
+     * Размер клетки; больше запрошенного, если сетку пришлось огрубить.
+     */
+    public double getCellSize()
+    {
+        return m_cellSize;
+    }
+
+    public int getWidth()
+    {
+        return m_width;
+    }
+
+    public int getHeight()
+    {
+        return m_height;
+    }
+
+    public int size()
+    {
+        return m_blocked.length;
+    }
+
+    /**
+     * Клетка, в которой лежит точка, или -1, если точка вне сетки.
+     */
+    public int cellAt(double x, double y)
+    {
+        int column = (int)Math.floor((x - m_originX) / m_cellSize);
+        int row = (int)Math.floor((y - m_originY) / m_cellSize);
+        if (column < 0 || row < 0 || column >= m_width || row >= m_height)
+        {
+            return -1;
+        }
+        return row * m_width + column;
+    }
+
+    /**
+     * Ближайшая к точке клетка сетки; для точек внутри сетки совпадает с {@link #cellAt}.
+     */
+    public int nearestCell(double x, double y)
+    {
+        if (m_blocked.length == 0)
+        {
+            return -1;
+        }
+        int column = (int)Math.floor((x - m_originX) / m_cellSize);
+        int row = (int)Math.floor((y - m_originY) / m_cellSize);
+        column = Math.max(0, Math.min(m_width - 1, column));
+        row = Math.max(0, Math.min(m_height - 1, row));
+        return row * m_width + column;
+    }
+
+    public int column(int cell)
+    {
+        return cell % m_width;
+    }
+
+    public int row(int cell)
+    {
+        return cell / m_width;
+    }
+
+    public double centerX(int cell)
+    {
+        return m_originX + (column(cell) + 0.5) * m_cellSize;
+    }
+
+    public double centerY(int cell)
+    {
+        return m_originY + (row(cell) + 0.5) * m_cellSize;
+    }
+
+    public boolean isBlocked(int cell)
+    {
+        return m_blocked[cell];
+    }
+
+    /**
+     * Свободная соседняя клетка в направлении direction или -1. Диагональный
+     * шаг запрещён, если он срезает угол занятой клетки.
+     */
+    public int neighbor(int cell, int direction)
+    {
+        int x = column(cell);
+        int y = row(cell);
+        int nx = x + directionX[direction];
+        int ny = y + directionY[direction];
+        if (nx < 0 || ny < 0 || nx >= m_width || ny >= m_height)
+        {
+            return -1;
+        }
+        int neighbor = ny * m_width + nx;
+        if (m_blocked[neighbor])
+        {
+            return -1;
+        }
+        if (direction >= 4 && (m_blocked[y * m_width + nx] || m_blocked[ny * m_width + x]))
+        {
+            return -1;
+        }
+        return neighbor;
+    }
+
+    public static double stepCost(int direction)
+    {
+        return direction >= 4 ? DIAGONAL_COST : 1;
+    }
+
+    /**
+     * Оценка длины пути между клетками без учёта препятствий.
+     */
+    public double distance(int fromCell, int toCell)
+    {
+        int diffX = Math.abs(column(fromCell) - column(toCell));
+        int diffY = Math.abs(row(fromCell) - row(toCell));
+        return Math.max(diffX, diffY) + (DIAGONAL_COST - 1) * Math.min(diffX, diffY);
+    }
+
+    /**
+     * Проходит ли отрезок между центрами клеток только по свободным клеткам.
+     */
+    public boolean isLineFree(int fromCell, int toCell)
+    {
+        int x = column(fromCell);
+        int y = row(fromCell);
+        int toX = column(toCell);
+        int toY = row(toCell);
+        int diffX = Math.abs(toX - x);
+        int diffY = -Math.abs(toY - y);
+        int stepX = x < toX ? 1 : -1;
+        int stepY = y < toY ? 1 : -1;
+        int error = diffX + diffY;
+        while (true)
+        {
+            if (m_blocked[y * m_width + x])
+            {
+                return false;
+            }
+            if (x == toX && y == toY)
+            {
+                return true;
+            }
+            int doubled = 2 * error;
+            if (doubled >= diffY)
+            {
+                error += diffY;
+                x += stepX;
+            }
+            if (doubled <= diffX)
+            {
+                error += diffX;
+                y += stepY;
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Делит роботов на куски и обновляет их в {@link ForkJoinPool}.
+ * {@link #update} возвращается только после того, как обработаны все куски,
+ * то есть каждый шаг заканчивается барьером. Роботы внутри шага обновляются
+ * независимо друг от друга, а границы кусков кратны
+ * {@link KinematicsKernel#laneCount()}: векторное ядро считает каждого робота
+ * в той же группе, что и при последовательном проходе, а скалярным хвостом -
+ * только последних роботов мира. Поэтому результат не зависит от размера
+ * кусков и совпадает с последовательным, насколько повторяемо само ядро
+ * (у векторного sin и cos могут отличаться в интерпретаторе и после JIT).
+ */
+public class ParallelWorldUpdater implements WorldUpdater, AutoCloseable
+{
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final ForkJoinPool m_pool;
+    private final boolean m_ownsPool;
+    private final int m_chunkSize;
+
+    public ParallelWorldUpdater()
+    {
+        this(ForkJoinPool.commonPool(), false, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelWorldUpdater(int parallelism)
+    {
+        this(new ForkJoinPool(parallelism), true, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelWorldUpdater(ForkJoinPool pool, int chunkSize)
+    {
+        this(pool, false, chunkSize);
+    }
+
+    private ParallelWorldUpdater(ForkJoinPool pool, boolean ownsPool, int chunkSize)
+    {
+        if (chunkSize <= 0)
+        {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        m_pool = pool;
+        m_ownsPool = ownsPool;
+        m_chunkSize = chunkSize;
+    }
+
+    public int getParallelism()
+    {
+        return m_pool.getParallelism();
+    }
+
+    @Override
+    public int update(RobotWorld world, double duration)
+    {
+        int count = world.size();
+        int lanes = world.getKernel().laneCount();
+        int chunkSize = (int)Math.min((m_chunkSize + lanes - 1L) / lanes * lanes, Integer.MAX_VALUE / 2);
+        if (count <= chunkSize)
+        {
+            return world.update(0, count, duration);
+        }
+        return m_pool.invoke(new UpdateTask(world, 0, count, duration, chunkSize, lanes));
+    }
+
+    @Override
+    public void close()
+    {
+        if (m_ownsPool)
+        {
+            m_pool.shutdown();
+        }
+    }
+
+    private static final class UpdateTask extends RecursiveTask<Integer>
+    {
+        private final RobotWorld m_world;
+        private final int m_from;
+        private final int m_to;
+        private final double m_duration;
+        private final int m_chunkSize;
+        private final int m_lanes;
+
+        UpdateTask(RobotWorld world, int from, int to, double duration, int chunkSize, int lanes)
+        {
+            m_world = world;
+            m_from = from;
+            m_to = to;
+            m_duration = duration;
+            m_chunkSize = chunkSize;
+            m_lanes = lanes;
+        }
+
+        @Override
+        protected Integer compute()
+        {
+            if (m_to - m_from <= m_chunkSize)
+            {
+                return m_world.update(m_from, m_to, m_duration);
+            }
+            // m_from кратно m_lanes, а куска больше m_chunkSize >= m_lanes,
+            // так что середина не выходит за m_to
+            int half = (m_to - m_from) >>> 1;
+            int middle = m_from + Math.max(m_lanes, half - half % m_lanes);
+            UpdateTask left = new UpdateTask(m_world, m_from, middle, m_duration, m_chunkSize, m_lanes);
+            left.fork();
+            int right = new UpdateTask(m_world, middle, m_to, m_duration, m_chunkSize, m_lanes).compute();
+            return left.join() + right;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Прокладывает пути роботов в обход препятствий по {@link OccupancyGrid}.
+ * Роботам, которых к одной цели едет много, путь даёт общее {@link FlowField};
+ * одиночным роботам путь ищется A*. Найденные шаги запоминаются в кэше по паре
+ * (клетка, целевая клетка), поля - по целевой клетке. Смена карты препятствий
+ * сбрасывает оба кэша.
+ *
+ * Роботу назначается промежуточная точка: самая дальняя клетка пути в пределах
+ * {@link #LOOKAHEAD} шагов, видимая из текущей клетки по прямой, либо сама цель,
+ * если она видна. Точка пересчитывается, только когда робот сменил клетку или цель.
+ */
+public class PathPlanner
+{
+    public static final double DEFAULT_CELL_SIZE = 16;
+    public static final int FLOW_FIELD_THRESHOLD = 16;
+    public static final int LOOKAHEAD = 8;
+    private static final double PADDING = 128;
+    private static final int MAX_FLOW_FIELDS = 16;
+    private static final int MAX_ROUTE_STEPS = 1 << 16;
+    private static final int UNREACHABLE = -1;
+
+    private final double m_cellSize;
+    private final double m_margin;
+
+    private ObstacleMap m_obstacles = ObstacleMap.empty();
+    private OccupancyGrid m_grid;
+
+    private final Map<Integer, FlowField> m_flowFields =
+        new LinkedHashMap<Integer, FlowField>(MAX_FLOW_FIELDS, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, FlowField> eldest)
+            {
+                return size() > MAX_FLOW_FIELDS;
+            }
+        };
+    private final Map<Long, Integer> m_routeSteps =
+        new LinkedHashMap<Long, Integer>(1024, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest)
+            {
+                return size() > MAX_ROUTE_STEPS;
+            }
+        };
+    private final Map<Integer, int[]> m_robotsPerTarget = new HashMap<>();
+
+    private int[] m_robotCell = new int[0];
+    private int[] m_robotTargetCell = new int[0];
+    private double[] m_robotTargetX = new double[0];
+    private double[] m_robotTargetY = new double[0];
+
+    private double[] m_pathCost = new double[0];
+    private int[] m_cameFrom = new int[0];
+    private boolean[] m_closed = new boolean[0];
+    private int[] m_touched = new int[0];
+    private final CellQueue m_open = new CellQueue();
+
+    public PathPlanner()
+    {
+        this(DEFAULT_CELL_SIZE, CollisionResolver.DEFAULT_ROBOT_RADIUS);
+    }
+
+    public PathPlanner(double cellSize, double margin)
+    {
+        m_cellSize = cellSize;
+        m_margin = margin;
+    }
+
+    public void setObstacles(ObstacleMap obstacles)
+    {
+        if (obstacles == m_obstacles)
+        {
+            return;
+        }
+        m_obstacles = obstacles;
+        m_grid = obstacles.isEmpty() ? null : new OccupancyGrid(obstacles, m_cellSize, m_margin, PADDING);
+        invalidate();
+    }
+
+    public OccupancyGrid getGrid()
+    {
+        return m_grid;
+    }
+
+    public void invalidate()
+    {
+        m_flowFields.clear();
+        m_routeSteps.clear();
+        Arrays.fill(m_robotCell, Integer.MIN_VALUE);
+        int cells = m_grid == null ? 0 : m_grid.size();
+        m_pathCost = new double[cells];
+        Arrays.fill(m_pathCost, Double.POSITIVE_INFINITY);
+        m_cameFrom = new int[cells];
+        m_closed = new boolean[cells];
+        m_touched = new int[Math.min(cells, 1024)];
+    }
+
+    public void assignWaypoints(RobotWorld world)
+    {
+        int count = world.size();
+        if (m_grid == null)
+        {
+            world.resetWaypoints();
+            return;
+        }
+        ensureCapacity(count);
+        OccupancyGrid grid = m_grid;
+
+        m_robotsPerTarget.clear();
+        int lastTargetCell = Integer.MIN_VALUE;
+        int[] lastCounter = null;
+        for (int i = 0; i < count; i++)
+        {
+            int targetCell = grid.nearestCell(world.getTargetX(i), world.getTargetY(i));
+            if (targetCell != lastTargetCell)
+            {
+                lastCounter = m_robotsPerTarget.computeIfAbsent(targetCell, cell -> new int[1]);
+                lastTargetCell = targetCell;
+            }
+            lastCounter[0]++;
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            double targetX = world.getTargetX(i);
+            double targetY = world.getTargetY(i);
+            int cell = grid.cellAt(world.getPositionX(i), world.getPositionY(i));
+            if (cell == m_robotCell[i] && targetX == m_robotTargetX[i] && targetY == m_robotTargetY[i])
+            {
+                continue;
+            }
+            // цель вне сетки: едем к ближайшей к ней клетке на краю, дальше препятствий нет
+            int targetCell = grid.nearestCell(targetX, targetY);
+            m_robotCell[i] = cell;
+            m_robotTargetCell[i] = targetCell;
+            m_robotTargetX[i] = targetX;
+            m_robotTargetY[i] = targetY;
+
+            int waypoint = UNREACHABLE;
+            if (cell >= 0 && targetCell >= 0 && cell != targetCell && !grid.isBlocked(cell))
+            {
+                int[] robots = m_robotsPerTarget.get(targetCell);
+                boolean useFlowField = m_flowFields.containsKey(targetCell)
+                    || (robots != null && robots[0] >= FLOW_FIELD_THRESHOLD);
+                waypoint = lookAhead(cell, targetCell, useFlowField);
+            }
+            if (waypoint == UNREACHABLE)
+            {
+                world.setWaypoint(i, targetX, targetY);
+            }
+            else
+            {
+                world.setWaypoint(i, grid.centerX(waypoint), grid.centerY(waypoint));
+            }
+        }
+    }
+
+    /**
+     * Считает текущие промежуточные точки роботов уже назначенными для их
+     * клеток и целей, например после восстановления мира из записи. Иначе
+     * на следующем шаге они пересчитались бы все сразу.
+     */
+    public void keepWaypoints(RobotWorld world)
+    {
+        OccupancyGrid grid = m_grid;
+        if (grid == null)
+        {
+            return;
+        }
+        int count = world.size();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++)
+        {
+            m_robotCell[i] = grid.cellAt(world.getPositionX(i), world.getPositionY(i));
+            m_robotTargetCell[i] = grid.nearestCell(world.getTargetX(i), world.getTargetY(i));
+            m_robotTargetX[i] = world.getTargetX(i);
+            m_robotTargetY[i] = world.getTargetY(i);
+        }
+    }
+
+    /**
+     * Клетка, к которой стоит ехать из cell, или UNREACHABLE, если ехать нужно
+     * прямо к цели (цель видна или пути нет).
+     */
+    private int lookAhead(int cell, int targetCell, boolean useFlowField)
+    {
+        OccupancyGrid grid = m_grid;
+        int current = cell;
+        int visible = UNREACHABLE;
+        int first = UNREACHABLE;
+        for (int step = 0; step < LOOKAHEAD; step++)
+        {
+            int next = useFlowField ? flowField(targetCell).next(current) : routeStep(current, targetCell);
+            if (next == UNREACHABLE || next == current)
+            {
+                break;
+            }
+            if (first == UNREACHABLE)
+            {
+                first = next;
+            }
+            if (!grid.isLineFree(cell, next))
+            {
+                break;
+            }
+            if (next == targetCell)
+            {
+                return UNREACHABLE;
+            }
+            visible = next;
+            current = next;
+        }
+        return visible != UNREACHABLE ? visible : first;
+    }
+
+    private FlowField flowField(int targetCell)
+    {
+        FlowField field = m_flowFields.get(targetCell);
+        if (field == null)
+        {
+            field = new FlowField(m_grid, targetCell);
+            m_flowFields.put(targetCell, field);
+        }
+        return field;
+    }
+
+    private int routeStep(int cell, int targetCell)
+    {
+        Integer step = m_routeSteps.get(routeKey(cell, targetCell));
+        if (step == null)
+        {
+            findRoute(cell, targetCell);
+            step = m_routeSteps.get(routeKey(cell, targetCell));
+        }
+        return step == null ? UNREACHABLE : step;
+    }
+
+    private static long routeKey(int cell, int targetCell)
+    {
+        return ((long)cell << 32) | (targetCell & 0xFFFFFFFFL);
+    }
+
+    /**
+     * A* от start до target. Все клетки найденного пути попадают в кэш шагов,
+     * так что роботу, который едет по этому пути, поиск больше не нужен.
+     */
+    private void findRoute(int start, int target)
+    {
+        OccupancyGrid grid = m_grid;
+        int touched = 0;
+        m_open.clear();
+        m_pathCost[start] = 0;
+        m_cameFrom[start] = start;
+        touched = touch(touched, start);
+        m_open.push(start, grid.distance(start, target));
+        boolean found = false;
+        while (!m_open.isEmpty())
+        {
+            int cell = m_open.pop();
+            if (m_closed[cell])
+            {
+                continue;
+            }
+            m_closed[cell] = true;
+            if (cell == target)
+            {
+                found = true;
+                break;
+            }
+            for (int direction = 0; direction < OccupancyGrid.DIRECTIONS; direction++)
+            {
+                int neighbor = grid.neighbor(cell, direction);
+                if (neighbor < 0 || m_closed[neighbor])
+                {
+                    continue;
+                }
+                double cost = m_pathCost[cell] + OccupancyGrid.stepCost(direction);
+                if (cost < m_pathCost[neighbor])
+                {
+                    if (m_pathCost[neighbor] == Double.POSITIVE_INFINITY)
+                    {
+                        touched = touch(touched, neighbor);
+                    }
+                    m_pathCost[neighbor] = cost;
+                    m_cameFrom[neighbor] = cell;
+                    m_open.push(neighbor, cost + grid.distance(neighbor, target));
+                }
+            }
+        }
+
+        if (found)
+        {
+            int next = target;
+            m_routeSteps.put(routeKey(target, target), target);
+            for (int cell = m_cameFrom[target]; ; cell = m_cameFrom[cell])
+            {
+                m_routeSteps.put(routeKey(cell, target), next);
+                if (cell == start)
+                {
+                    break;
+                }
+                next = cell;
+            }
+        }
+        else
+        {
+            m_routeSteps.put(routeKey(start, target), UNREACHABLE);
+        }
+
+        for (int i = 0; i < touched; i++)
+        {
+            int cell = m_touched[i];
+            m_pathCost[cell] = Double.POSITIVE_INFINITY;
+            m_closed[cell] = false;
+        }
+    }
+
+    private int touch(int touched, int cell)
+    {
+        if (touched == m_touched.length)
+        {
+            m_touched = Arrays.copyOf(m_touched, Math.max(16, touched * 2));
+        }
+        m_touched[touched] = cell;
+        return touched + 1;
+    }
+
+    private void ensureCapacity(int count)
+    {
+        if (m_robotCell.length >= count)
+        {
+            return;
+        }
+        int oldLength = m_robotCell.length;
+        int capacity = Math.max(count, oldLength * 2);
+        m_robotCell = Arrays.copyOf(m_robotCell, capacity);
+        m_robotTargetCell = Arrays.copyOf(m_robotTargetCell, capacity);
+        m_robotTargetX = Arrays.copyOf(m_robotTargetX, capacity);
+        m_robotTargetY = Arrays.copyOf(m_robotTargetY, capacity);
+        Arrays.fill(m_robotCell, oldLength, capacity, Integer.MIN_VALUE);
+    }
+}
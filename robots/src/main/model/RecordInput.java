@@ -0,0 +1,138 @@
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Буферизованное чтение из канала с произвольной позиции; формат тот же,
+ * что у {@link RecordOutput}.
+ */
+final class RecordInput
+{
+    private final FileChannel m_channel;
+    private final ByteBuffer m_buffer;
+    private long m_bufferStart;
+
+    RecordInput(FileChannel channel, int bufferSize)
+    {
+        m_channel = channel;
+        m_buffer = ByteBuffer.allocateDirect(bufferSize);
+        m_buffer.limit(0);
+    }
+
+    long position()
+    {
+        return m_bufferStart + m_buffer.position();
+    }
+
+    void seek(long position)
+    {
+        if (position >= m_bufferStart && position <= m_bufferStart + m_buffer.limit())
+        {
+            m_buffer.position((int)(position - m_bufferStart));
+            return;
+        }
+        m_bufferStart = position;
+        m_buffer.clear().limit(0);
+    }
+
+    /**
+     * Есть ли в файле ещё хотя бы один байт.
+     */
+    boolean hasRemaining() throws IOException
+    {
+        return m_buffer.hasRemaining() || fill(1);
+    }
+
+    int getByte() throws IOException
+    {
+        require(1);
+        return m_buffer.get() & 0xFF;
+    }
+
+    int getInt() throws IOException
+    {
+        require(4);
+        return m_buffer.getInt();
+    }
+
+    long getLong() throws IOException
+    {
+        require(8);
+        return m_buffer.getLong();
+    }
+
+    double getDouble() throws IOException
+    {
+        require(8);
+        return m_buffer.getDouble();
+    }
+
+    long getVarLong() throws IOException
+    {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = getByte();
+            result |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable-length number at " + position());
+    }
+
+    long getTrimmedLong() throws IOException
+    {
+        int header = getByte();
+        int leading = header >>> 4;
+        int trailing = header & 0xF;
+        if (leading + trailing > 8)
+        {
+            throw new IOException("Malformed trimmed number at " + position());
+        }
+        long result = 0;
+        for (int i = leading + trailing; i < 8; i++)
+        {
+            result = result << 8 | getByte();
+        }
+        return trailing == 8 ? 0 : result << 8 * trailing;
+    }
+
+    int getVarInt() throws IOException
+    {
+        long value = getVarLong();
+        if (value < 0 || value > Integer.MAX_VALUE)
+        {
+            throw new IOException("Value out of range at " + position() + ": " + value);
+        }
+        return (int)value;
+    }
+
+    private void require(int bytes) throws IOException
+    {
+        if (m_buffer.remaining() < bytes && !fill(bytes))
+        {
+            throw new EOFException("Unexpected end of recording at " + position());
+        }
+    }
+
+    private boolean fill(int bytes) throws IOException
+    {
+        m_bufferStart += m_buffer.position();
+        m_buffer.compact();
+        while (m_buffer.position() < bytes)
+        {
+            int read = m_channel.read(m_buffer, m_bufferStart + m_buffer.position());
+            if (read <= 0)
+            {
+                break;
+            }
+        }
+        m_buffer.flip();
+        return m_buffer.remaining() >= bytes;
+    }
+}
@@ -0,0 +1,230 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Буферизованная запись в канал: числа фиксированной длины и числа
+ * переменной длины по 7 бит в байте, младшие группы первыми.
+ *
+ * Заполненный буфер не пишется сразу, а ставится в очередь до вызова
+ * {@link #drain()} или {@link #takePending}; только если очередь выросла
+ * больше MAX_PENDING буферов, запись идёт прямо при заполнении.
+ * Потокобезопасности нет: доступ упорядочивает владелец. Исключение -
+ * {@link #write}, который можно вызывать без его блокировки.
+ */
+final class RecordOutput
+{
+    private static final int MAX_PENDING = 16;
+
+    private final FileChannel m_channel;
+    private final int m_bufferSize;
+    private final ArrayDeque<ByteBuffer> m_pending = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> m_spare = new ArrayDeque<>();
+    private ByteBuffer m_buffer;
+    private long m_bufferStart;
+    /**
+     * Позиция в файле, до которой данные уже записаны в канал.
+     */
+    private long m_written;
+
+    RecordOutput(FileChannel channel, int bufferSize) throws IOException
+    {
+        m_channel = channel;
+        m_bufferSize = bufferSize;
+        m_buffer = ByteBuffer.allocateDirect(bufferSize);
+        m_bufferStart = channel.position();
+        m_written = m_bufferStart;
+    }
+
+    long position()
+    {
+        return m_bufferStart + m_buffer.position();
+    }
+
+    void putByte(int value) throws IOException
+    {
+        require(1);
+        m_buffer.put((byte)value);
+    }
+
+    void putInt(int value) throws IOException
+    {
+        require(4);
+        m_buffer.putInt(value);
+    }
+
+    void putLong(long value) throws IOException
+    {
+        require(8);
+        m_buffer.putLong(value);
+    }
+
+    void putDouble(double value) throws IOException
+    {
+        require(8);
+        m_buffer.putDouble(value);
+    }
+
+    void putVarLong(long value) throws IOException
+    {
+        require(10);
+        while ((value & ~0x7FL) != 0)
+        {
+            m_buffer.put((byte)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        m_buffer.put((byte)value);
+    }
+
+    /**
+     * Пишет long без нулевых байтов по краям: байт, в старших четырёх битах
+     * которого число нулевых старших байтов, а в младших - нулевых младших,
+     * затем остальные байты от старшего. Ноль занимает один байт, любое
+     * значение - не больше девяти.
+     */
+    void putTrimmedLong(long value) throws IOException
+    {
+        require(9);
+        int leading = Long.numberOfLeadingZeros(value) >>> 3;
+        int trailing = value == 0 ? 0 : Long.numberOfTrailingZeros(value) >>> 3;
+        m_buffer.put((byte)(leading << 4 | trailing));
+        for (int shift = 8 * (7 - leading); shift >= 8 * trailing; shift -= 8)
+        {
+            m_buffer.put((byte)(value >>> shift));
+        }
+    }
+
+    /**
+     * Переписывает уже записанное long по абсолютной позиции в файле.
+     */
+    void patchLong(long position, long value) throws IOException
+    {
+        if (position >= m_bufferStart)
+        {
+            m_buffer.putLong((int)(position - m_bufferStart), value);
+            return;
+        }
+        long start = m_written;
+        for (ByteBuffer pending : m_pending)
+        {
+            if (position < start)
+            {
+                break;
+            }
+            if (position < start + pending.limit())
+            {
+                int offset = (int)(position - start);
+                pending.putLong(offset, value);
+                if (offset >= pending.position())
+                {
+                    return;
+                }
+                // часть буфера уже в файле: дописываем и туда
+                break;
+            }
+            start += pending.limit();
+        }
+        ByteBuffer patch = ByteBuffer.allocate(8).putLong(0, value);
+        while (patch.hasRemaining())
+        {
+            m_channel.write(patch, position + patch.position());
+        }
+    }
+
+    /**
+     * Пишет в канал заполненные буферы из очереди; текущий остаётся.
+     */
+    void drain() throws IOException
+    {
+        while (!m_pending.isEmpty())
+        {
+            ByteBuffer pending = m_pending.peekFirst();
+            while (pending.hasRemaining())
+            {
+                m_channel.write(pending, m_written + pending.position());
+            }
+            m_written += pending.limit();
+            m_pending.removeFirst();
+            m_spare.addLast(pending.clear());
+        }
+    }
+
+    /**
+     * Забирает заполненные буферы из очереди в target, чтобы записать их
+     * через {@link #write} без блокировки владельца. Возвращает позицию
+     * в файле первого из них. Правка через patchLong таких буферов
+     * уже не касается: она относится к последнему кадру.
+     */
+    long takePending(List<ByteBuffer> target)
+    {
+        long position = m_written;
+        while (!m_pending.isEmpty())
+        {
+            ByteBuffer pending = m_pending.removeFirst();
+            m_written += pending.limit();
+            target.add(pending);
+        }
+        return position;
+    }
+
+    /**
+     * Пишет буферы, полученные из {@link #takePending}, начиная с position.
+     */
+    void write(List<ByteBuffer> buffers, long position) throws IOException
+    {
+        for (ByteBuffer buffer : buffers)
+        {
+            while (buffer.hasRemaining())
+            {
+                m_channel.write(buffer, position + buffer.position());
+            }
+            position += buffer.limit();
+        }
+    }
+
+    /**
+     * Возвращает записанные буферы в запас и очищает buffers.
+     */
+    void recycle(List<ByteBuffer> buffers)
+    {
+        for (ByteBuffer buffer : buffers)
+        {
+            m_spare.addLast(buffer.clear());
+        }
+        buffers.clear();
+    }
+
+    void flush() throws IOException
+    {
+        if (m_buffer.position() > 0)
+        {
+            retire();
+        }
+        drain();
+    }
+
+    private void require(int bytes) throws IOException
+    {
+        if (m_buffer.remaining() < bytes)
+        {
+            retire();
+        }
+    }
+
+    private void retire() throws IOException
+    {
+        m_buffer.flip();
+        m_pending.addLast(m_buffer);
+        m_bufferStart += m_buffer.limit();
+        ByteBuffer spare = m_spare.pollFirst();
+        m_buffer = spare != null ? spare : ByteBuffer.allocateDirect(m_bufferSize);
+        if (m_pending.size() > MAX_PENDING)
+        {
+            drain();
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Состояние всех роботов хранится по столбцам в массивах примитивов:
+ * i-й робот - это i-е элементы массивов. Обновление проходит по массивам
+ * одним циклом и ничего не выделяет в куче.
+ */
+public class RobotWorld
+{
+    public static final double DEFAULT_MAX_VELOCITY = 0.1; 
+    public static final double DEFAULT_MAX_ANGULAR_VELOCITY = 0.001; 
+    static final double TARGET_REACHED_DISTANCE = 0.5;
+    private static final int DEFAULT_CAPACITY = 16;
+    /**
+     * Положение, курс с его синусом и косинусом, цель, промежуточная точка,
+     * наибольшие линейная и угловая скорости.
+     */
+    static final int STATE_FIELDS = 11;
+
+    private int m_count;
+    private double[] m_positionX;
+    private double[] m_positionY;
+    private double[] m_direction;
+    private double[] m_sinDirection;
+    private double[] m_cosDirection;
+    private double[] m_targetX;
+    private double[] m_targetY;
+    private double[] m_waypointX;
+    private double[] m_waypointY;
+    private double[] m_maxVelocity;
+    private double[] m_maxAngularVelocity;
+    private KinematicsKernel m_kernel = KinematicsKernel.best();
+
+    public RobotWorld()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RobotWorld(int capacity)
+    {
+        capacity = Math.max(capacity, 1);
+        m_positionX = new double[capacity];
+        m_positionY = new double[capacity];
+        m_direction = new double[capacity];
+        m_sinDirection = new double[capacity];
+        m_cosDirection = new double[capacity];
+        m_targetX = new double[capacity];
+        m_targetY = new double[capacity];
+        m_waypointX = new double[capacity];
+        m_waypointY = new double[capacity];
+        m_maxVelocity = new double[capacity];
+        m_maxAngularVelocity = new double[capacity];
+    }
+
+    public int size()
+    {
+        return m_count;
+    }
+
+    public void ensureCapacity(int capacity)
+    {
+        if (capacity <= m_positionX.length)
+        {
+            return;
+        }
+        capacity = Math.max(capacity, m_positionX.length * 2);
+        m_positionX = Arrays.copyOf(m_positionX, capacity);
+        m_positionY = Arrays.copyOf(m_positionY, capacity);
+        m_direction = Arrays.copyOf(m_direction, capacity);
+        m_sinDirection = Arrays.copyOf(m_sinDirection, capacity);
+        m_cosDirection = Arrays.copyOf(m_cosDirection, capacity);
+        m_targetX = Arrays.copyOf(m_targetX, capacity);
+        m_targetY = Arrays.copyOf(m_targetY, capacity);
+        m_waypointX = Arrays.copyOf(m_waypointX, capacity);
+        m_waypointY = Arrays.copyOf(m_waypointY, capacity);
+        m_maxVelocity = Arrays.copyOf(m_maxVelocity, capacity);
+        m_maxAngularVelocity = Arrays.copyOf(m_maxAngularVelocity, capacity);
+    }
+
+    public int addRobot(double x, double y, double direction, double targetX, double targetY)
+    {
+        return addRobot(x, y, direction, targetX, targetY, DEFAULT_MAX_VELOCITY, DEFAULT_MAX_ANGULAR_VELOCITY);
+    }
+
+    /**
+     * Скорости не могут быть отрицательными; робот с нулевой угловой
+     * скоростью едет только прямо.
+     */
+    public int addRobot(double x, double y, double direction, double targetX, double targetY,
+        double maxVelocity, double maxAngularVelocity)
+    {
+        checkVelocities(maxVelocity, maxAngularVelocity);
+        ensureCapacity(m_count + 1);
+        int robot = m_count++;
+        m_positionX[robot] = x;
+        m_positionY[robot] = y;
+        m_direction[robot] = Angles.normalize(direction);
+        m_sinDirection[robot] = Math.sin(direction);
+        m_cosDirection[robot] = Math.cos(direction);
+        m_targetX[robot] = targetX;
+        m_targetY[robot] = targetY;
+        m_waypointX[robot] = targetX;
+        m_waypointY[robot] = targetY;
+        m_maxVelocity[robot] = maxVelocity;
+        m_maxAngularVelocity[robot] = maxAngularVelocity;
+        return robot;
+    }
+
+    private static void checkVelocities(double maxVelocity, double maxAngularVelocity)
+    {
+        if (!(maxVelocity >= 0) || !(maxAngularVelocity >= 0))
+        {
+            throw new IllegalArgumentException("velocities must be non-negative: " + maxVelocity
+                + ", " + maxAngularVelocity);
+        }
+    }
+
+    public void clear()
+    {
+        m_count = 0;
+    }
+
+    public void setTarget(int robot, double x, double y)
+    {
+        checkIndex(robot);
+        m_targetX[robot] = x;
+        m_targetY[robot] = y;
+        m_waypointX[robot] = x;
+        m_waypointY[robot] = y;
+    }
+
+    public void setTargetForAll(double x, double y)
+    {
+        Arrays.fill(m_targetX, 0, m_count, x);
+        Arrays.fill(m_targetY, 0, m_count, y);
+        resetWaypoints();
+    }
+
+    /**
+     * Промежуточная точка, на которую робот держит курс; по умолчанию это
+     * сама цель, в обход препятствий её назначает {@link PathPlanner}.
+     */
+    void setWaypoint(int robot, double x, double y)
+    {
+        m_waypointX[robot] = x;
+        m_waypointY[robot] = y;
+    }
+
+    void resetWaypoints()
+    {
+        System.arraycopy(m_targetX, 0, m_waypointX, 0, m_count);
+        System.arraycopy(m_targetY, 0, m_waypointY, 0, m_count);
+    }
+
+    public void setPosition(int robot, double x, double y)
+    {
+        checkIndex(robot);
+        m_positionX[robot] = x;
+        m_positionY[robot] = y;
+    }
+
+    public double getPositionX(int robot)
+    {
+        checkIndex(robot);
+        return m_positionX[robot];
+    }
+
+    public double getPositionY(int robot)
+    {
+        checkIndex(robot);
+        return m_positionY[robot];
+    }
+
+    public double getDirection(int robot)
+    {
+        checkIndex(robot);
+        return m_direction[robot];
+    }
+
+    public double getTargetX(int robot)
+    {
+        checkIndex(robot);
+        return m_targetX[robot];
+    }
+
+    public double getTargetY(int robot)
+    {
+        checkIndex(robot);
+        return m_targetY[robot];
+    }
+
+    public void setMaxVelocity(int robot, double maxVelocity, double maxAngularVelocity)
+    {
+        checkIndex(robot);
+        checkVelocities(maxVelocity, maxAngularVelocity);
+        m_maxVelocity[robot] = maxVelocity;
+        m_maxAngularVelocity[robot] = maxAngularVelocity;
+    }
+
+    public double getMaxVelocity(int robot)
+    {
+        checkIndex(robot);
+        return m_maxVelocity[robot];
+    }
+
+    public double getMaxAngularVelocity(int robot)
+    {
+        checkIndex(robot);
+        return m_maxAngularVelocity[robot];
+    }
+
+    void copyTo(double[] positionX, double[] positionY, double[] direction,
+        double[] targetX, double[] targetY)
+    {
+        System.arraycopy(m_positionX, 0, positionX, 0, m_count);
+        System.arraycopy(m_positionY, 0, positionY, 0, m_count);
+        System.arraycopy(m_direction, 0, direction, 0, m_count);
+        System.arraycopy(m_targetX, 0, targetX, 0, m_count);
+        System.arraycopy(m_targetY, 0, targetY, 0, m_count);
+    }
+
+    /**
+     * Внутренние массивы всего состояния роботов в порядке STATE_FIELDS.
+     * Действительны, пока мир не вырос.
+     */
+    double[][] stateArrays()
+    {
+        return new double[][] {
+            m_positionX, m_positionY, m_direction, m_sinDirection, m_cosDirection,
+            m_targetX, m_targetY, m_waypointX, m_waypointY, m_maxVelocity, m_maxAngularVelocity
+        };
+    }
+
+    /**
+     * Заменяет всё состояние роботов массивами в порядке STATE_FIELDS.
+     */
+    void restoreState(int count, double[][] state)
+    {
+        ensureCapacity(count);
+        double[][] arrays = stateArrays();
+        for (int field = 0; field < STATE_FIELDS; field++)
+        {
+            System.arraycopy(state[field], 0, arrays[field], 0, count);
+        }
+        m_count = count;
+    }
+
+    void copyPositionsTo(double[] positionX, double[] positionY, double[] direction)
+    {
+        System.arraycopy(m_positionX, 0, positionX, 0, m_count);
+        System.arraycopy(m_positionY, 0, positionY, 0, m_count);
+        System.arraycopy(m_direction, 0, direction, 0, m_count);
+    }
+
+    private void checkIndex(int robot)
+    {
+        if (robot < 0 || robot >= m_count)
+        {
+            throw new IndexOutOfBoundsException("robot " + robot + ", size " + m_count);
+        }
+    }
+
+    public int update(double duration)
+    {
+        return update(0, m_count, duration);
+    }
+
+    /**
+     * Сдвигает роботов с индексами [from, to). Разные диапазоны можно
+     * обновлять независимо друг от друга. Возвращает число роботов,
+     * которые ещё не доехали до цели.
+     */
+    public int update(int from, int to, double duration)
+    {
+        return m_kernel.update(this, from, to, duration);
+    }
+
+    public KinematicsKernel getKernel()
+    {
+        return m_kernel;
+    }
+
+    public void setKernel(KinematicsKernel kernel)
+    {
+        m_kernel = kernel;
+    }
+
+    double[] positionX()
+    {
+        return m_positionX;
+    }
+
+    double[] positionY()
+    {
+        return m_positionY;
+    }
+
+    double[] direction()
+    {
+        return m_direction;
+    }
+
+    double[] sinDirection()
+    {
+        return m_sinDirection;
+    }
+
+    double[] cosDirection()
+    {
+        return m_cosDirection;
+    }
+
+    double[] targetX()
+    {
+        return m_targetX;
+    }
+
+    double[] targetY()
+    {
+        return m_targetY;
+    }
+
+    double[] waypointX()
+    {
+        return m_waypointX;
+    }
+
+    double[] waypointY()
+    {
+        return m_waypointY;
+    }
+
+    double[] maxVelocity()
+    {
+        return m_maxVelocity;
+    }
+
+    double[] maxAngularVelocity()
+    {
+        return m_maxAngularVelocity;
+    }
+}
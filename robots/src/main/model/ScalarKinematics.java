@@ -0,0 +1,75 @@
+package model;
+
+final class ScalarKinematics implements KinematicsKernel
+{
+    static final ScalarKinematics instance = new ScalarKinematics();
+
+    private static final double REACHED_DISTANCE_SQUARED =
+        RobotWorld.TARGET_REACHED_DISTANCE * RobotWorld.TARGET_REACHED_DISTANCE;
+
+    private ScalarKinematics()
+    {
+    }
+
+    @Override
+    public int update(RobotWorld world, int from, int to, double duration)
+    {
+        final double[] positionX = world.positionX();
+        final double[] positionY = world.positionY();
+        final double[] direction = world.direction();
+        final double[] sinDirection = world.sinDirection();
+        final double[] cosDirection = world.cosDirection();
+        final double[] targetX = world.targetX();
+        final double[] targetY = world.targetY();
+        final double[] waypointX = world.waypointX();
+        final double[] waypointY = world.waypointY();
+        final double[] maxVelocity = world.maxVelocity();
+        final double[] maxAngularVelocity = world.maxAngularVelocity();
+        int moving = 0;
+        for (int i = from; i < to; i++)
+        {
+            double x = positionX[i];
+            double y = positionY[i];
+            double diffX = targetX[i] - x;
+            double diffY = targetY[i] - y;
+            if (diffX * diffX + diffY * diffY < REACHED_DISTANCE_SQUARED)
+            {
+                continue;
+            }
+            moving++;
+            double heading = direction[i];
+            double angleToTarget = Math.atan2(waypointY[i] - y, waypointX[i] - x);
+            double velocity = maxVelocity[i];
+            double angularVelocity = maxAngularVelocity[i] * Angles.turnDirection(heading, angleToTarget);
+
+            double sinHeading = sinDirection[i];
+            double cosHeading = cosDirection[i];
+            double newHeading = heading + angularVelocity * duration;
+            double newX;
+            double newY;
+            double newSin;
+            double newCos;
+            if (angularVelocity == 0)
+            {
+                newSin = sinHeading;
+                newCos = cosHeading;
+                newX = x + velocity * duration * cosHeading;
+                newY = y + velocity * duration * sinHeading;
+            }
+            else
+            {
+                newSin = Math.sin(newHeading);
+                newCos = Math.cos(newHeading);
+                double radius = velocity / angularVelocity;
+                newX = x + radius * (newSin - sinHeading);
+                newY = y - radius * (newCos - cosHeading);
+            }
+            positionX[i] = newX;
+            positionY[i] = newY;
+            direction[i] = Angles.normalize(newHeading);
+            sinDirection[i] = newSin;
+            cosDirection[i] = newCos;
+        }
+        return moving;
+    }
+}
@@ -0,0 +1,539 @@
+package model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Загрузчик сценариев: роботов с их целями и скоростями, препятствий
+ * и переключателя столкновений. Файл читается потоком по строкам в один
+ * переиспользуемый буфер, числа разбираются прямо из него, а роботы
+ * дописываются в столбцы состояния в порядке RobotWorld.STATE_FIELDS, так
+ * что на робота не создаётся ни строк, ни объектов. Результат - снимок
+ * {@link WorldCheckpoint} на шаге 0, который ставится в движок обычным
+ * восстановлением.
+ *
+ * Текстовый формат - по команде на строку, '#' начинает комментарий:
+ * <pre>
+ * capacity count                 # ожидаемое число роботов, необязательно
+ * collisions on|off              # столкновения роботов, по умолчанию on
+ * target x y                     # цель для следующих роботов
+ * maxVelocity v                  # скорости для следующих роботов
+ * maxAngularVelocity w
+ * robot x y [direction [targetX targetY [maxVelocity maxAngularVelocity]]]
+ * spawn count x y width height [seed]
+ * rect x y width height
+ * circle x y radius
+ * </pre>
+ * Пока команды target не было, робот стоит на месте: его цель - его
+ * положение. spawn расставляет count роботов со случайными положением
+ * в прямоугольнике и курсом, одинаковыми для одного seed.
+ */
+public final class Scenario
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final long DEFAULT_SEED = 42;
+    private static final int MAX_ROBOTS = Integer.MAX_VALUE - 8;
+    /**
+     * Точные степени десяти: до 10^22 double представляет их без ошибки.
+     */
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static
+    {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+        {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Reader m_reader;
+    private final char[] m_buffer = new char[BUFFER_SIZE];
+    private int m_bufferPosition;
+    private int m_bufferLimit;
+    private char[] m_line = new char[256];
+    private int m_lineLength;
+    private int m_lineNumber;
+    private int m_cursor;
+    private int m_tokenStart;
+    private int m_tokenEnd;
+
+    private double[][] m_state = new double[RobotWorld.STATE_FIELDS][INITIAL_CAPACITY];
+    private int m_count;
+    private double[] m_rectangles = new double[64];
+    private int m_rectangleCount;
+    private double[] m_circles = new double[48];
+    private int m_circleCount;
+    private boolean m_robotCollisions = true;
+    private boolean m_hasTarget;
+    private double m_targetX;
+    private double m_targetY;
+    private double m_maxVelocity = RobotWorld.DEFAULT_MAX_VELOCITY;
+    private double m_maxAngularVelocity = RobotWorld.DEFAULT_MAX_ANGULAR_VELOCITY;
+
+    private Scenario(Reader reader)
+    {
+        m_reader = reader;
+    }
+
+    public static WorldCheckpoint load(Path path) throws IOException
+    {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8))
+        {
+            return parse(reader);
+        }
+    }
+
+    public static WorldCheckpoint parse(Reader source) throws IOException
+    {
+        return new Scenario(source).parse();
+    }
+
+    private WorldCheckpoint parse() throws IOException
+    {
+        while (readLine())
+        {
+            if (!nextToken())
+            {
+                continue;
+            }
+            try
+            {
+                parseCommand();
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IOException("Bad value at line " + m_lineNumber + ": " + lineText(), e);
+            }
+            if (nextToken())
+            {
+                throw error("Unexpected value");
+            }
+        }
+        ObstacleMap obstacles = m_rectangleCount + m_circleCount == 0
+            ? ObstacleMap.empty()
+            : new ObstacleMap(m_rectangles, m_rectangleCount, m_circles, m_circleCount);
+        return new WorldCheckpoint(0, m_count, m_state, obstacles, m_robotCollisions);
+    }
+
+    private void parseCommand() throws IOException
+    {
+        if (tokenEquals("robot"))
+        {
+            double x = nextNumber();
+            double y = nextNumber();
+            double direction = hasMoreTokens() ? nextNumber() : 0;
+            double targetX = m_hasTarget ? m_targetX : x;
+            double targetY = m_hasTarget ? m_targetY : y;
+            if (hasMoreTokens())
+            {
+                targetX = nextNumber();
+                targetY = nextNumber();
+            }
+            double maxVelocity = m_maxVelocity;
+            double maxAngularVelocity = m_maxAngularVelocity;
+            if (hasMoreTokens())
+            {
+                maxVelocity = nextVelocity();
+                maxAngularVelocity = nextVelocity();
+            }
+            ensureCapacity(m_count + 1L);
+            addRobot(x, y, direction, targetX, targetY, maxVelocity, maxAngularVelocity);
+        }
+        else if (tokenEquals("spawn"))
+        {
+            long count = nextCount();
+            double x = nextNumber();
+            double y = nextNumber();
+            double width = nextNumber();
+            double height = nextNumber();
+            long seed = hasMoreTokens() ? nextSeed() : DEFAULT_SEED;
+            spawn(count, x, y, width, height, seed);
+        }
+        else if (tokenEquals("target"))
+        {
+            m_targetX = nextNumber();
+            m_targetY = nextNumber();
+            m_hasTarget = true;
+        }
+        else if (tokenEquals("maxVelocity"))
+        {
+            m_maxVelocity = nextVelocity();
+        }
+        else if (tokenEquals("maxAngularVelocity"))
+        {
+            m_maxAngularVelocity = nextVelocity();
+        }
+        else if (tokenEquals("capacity"))
+        {
+            ensureCapacity(nextCount());
+        }
+        else if (tokenEquals("collisions"))
+        {
+            expectToken();
+            if (tokenEquals("on") || tokenEquals("off"))
+            {
+                m_robotCollisions = tokenEquals("on");
+            }
+            else
+            {
+                throw error("Expected on or off");
+            }
+        }
+        else if (tokenEquals("rect"))
+        {
+            if (m_rectangleCount * 4 + 4 > m_rectangles.length)
+            {
+                m_rectangles = Arrays.copyOf(m_rectangles, m_rectangles.length * 2);
+            }
+            for (int i = 0; i < 4; i++)
+            {
+                m_rectangles[m_rectangleCount * 4 + i] = nextNumber();
+            }
+            ObstacleMap.checkRectangle(m_rectangles[m_rectangleCount * 4], m_rectangles[m_rectangleCount * 4 + 1],
+                m_rectangles[m_rectangleCount * 4 + 2], m_rectangles[m_rectangleCount * 4 + 3]);
+            m_rectangleCount++;
+        }
+        else if (tokenEquals("circle"))
+        {
+            if (m_circleCount * 3 + 3 > m_circles.length)
+            {
+                m_circles = Arrays.copyOf(m_circles, m_circles.length * 2);
+            }
+            for (int i = 0; i < 3; i++)
+            {
+                m_circles[m_circleCount * 3 + i] = nextNumber();
+            }
+            ObstacleMap.checkCircle(m_circles[m_circleCount * 3], m_circles[m_circleCount * 3 + 1],
+                m_circles[m_circleCount * 3 + 2]);
+            m_circleCount++;
+        }
+        else
+        {
+            throw error("Unknown command");
+        }
+    }
+
+    private void spawn(long count, double x, double y, double width, double height, long seed) throws IOException
+    {
+        if (!(width >= 0) || !(height >= 0))
+        {
+            throw error("Negative area");
+        }
+        ensureCapacity(m_count + count);
+        Random random = new Random(seed);
+        for (long i = 0; i < count; i++)
+        {
+            double robotX = x + random.nextDouble() * width;
+            double robotY = y + random.nextDouble() * height;
+            double direction = random.nextDouble() * Angles.TWO_PI;
+            addRobot(robotX, robotY, direction, m_hasTarget ? m_targetX : robotX, m_hasTarget ? m_targetY : robotY,
+                m_maxVelocity, m_maxAngularVelocity);
+        }
+    }
+
+    /**
+     * Дописывает робота в столбцы; место должно быть заранее выделено.
+     */
+    private void addRobot(double x, double y, double direction, double targetX, double targetY,
+        double maxVelocity, double maxAngularVelocity)
+    {
+        double heading = Angles.normalize(direction);
+        double[][] state = m_state;
+        int robot = m_count++;
+        state[0][robot] = x;
+        state[1][robot] = y;
+        state[2][robot] = heading;
+        state[3][robot] = Math.sin(heading);
+        state[4][robot] = Math.cos(heading);
+        state[5][robot] = targetX;
+        state[6][robot] = targetY;
+        state[7][robot] = targetX;
+        state[8][robot] = targetY;
+        state[9][robot] = maxVelocity;
+        state[10][robot] = maxAngularVelocity;
+    }
+
+    private void ensureCapacity(long capacity) throws IOException
+    {
+        if (capacity > MAX_ROBOTS)
+        {
+            throw error("Too many robots");
+        }
+        int current = m_state[0].length;
+        if (capacity <= current)
+        {
+            return;
+        }
+        int grown = (int)Math.min(Math.max(capacity, current * 2L), MAX_ROBOTS);
+        for (int field = 0; field < RobotWorld.STATE_FIELDS; field++)
+        {
+            m_state[field] = Arrays.copyOf(m_state[field], grown);
+        }
+    }
+
+    /**
+     * Читает следующую строку в m_line без символа конца строки.
+     * Возвращает false в конце файла.
+     */
+    private boolean readLine() throws IOException
+    {
+        m_lineLength = 0;
+        m_cursor = 0;
+        while (true)
+        {
+            if (m_bufferPosition == m_bufferLimit)
+            {
+                m_bufferLimit = m_reader.read(m_buffer, 0, m_buffer.length);
+                m_bufferPosition = 0;
+                if (m_bufferLimit <= 0)
+                {
+                    m_bufferLimit = 0;
+                    if (m_lineLength == 0)
+                    {
+                        return false;
+                    }
+                    m_lineNumber++;
+                    return true;
+                }
+            }
+            int start = m_bufferPosition;
+            int end = start;
+            while (end < m_bufferLimit && m_buffer[end] != '\n')
+            {
+                end++;
+            }
+            append(start, end);
+            if (end < m_bufferLimit)
+            {
+                m_bufferPosition = end + 1;
+                m_lineNumber++;
+                if (m_lineLength > 0 && m_line[m_lineLength - 1] == '\r')
+                {
+                    m_lineLength--;
+                }
+                return true;
+            }
+            m_bufferPosition = end;
+        }
+    }
+
+    private void append(int start, int end)
+    {
+        int length = end - start;
+        if (m_lineLength + length > m_line.length)
+        {
+            m_line = Arrays.copyOf(m_line, Math.max(m_line.length * 2, m_lineLength + length));
+        }
+        System.arraycopy(m_buffer, start, m_line, m_lineLength, length);
+        m_lineLength += length;
+    }
+
+    /**
+     * Находит следующее слово строки в [m_tokenStart, m_tokenEnd).
+     * Возвращает false, если до конца строки или комментария слов нет.
+     */
+    private boolean nextToken()
+    {
+        char[] line = m_line;
+        int position = m_cursor;
+        while (position < m_lineLength && (line[position] == ' ' || line[position] == '\t'))
+        {
+            position++;
+        }
+        if (position == m_lineLength || line[position] == '#')
+        {
+            m_cursor = m_lineLength;
+            return false;
+        }
+        m_tokenStart = position;
+        while (position < m_lineLength && line[position] != ' ' && line[position] != '\t' && line[position] != '#')
+        {
+            position++;
+        }
+        m_tokenEnd = position;
+        m_cursor = position;
+        return true;
+    }
+
+    private boolean hasMoreTokens()
+    {
+        int position = m_cursor;
+        while (position < m_lineLength && (m_line[position] == ' ' || m_line[position] == '\t'))
+        {
+            position++;
+        }
+        return position < m_lineLength && m_line[position] != '#';
+    }
+
+    private void expectToken() throws IOException
+    {
+        if (!nextToken())
+        {
+            throw error("Missing value");
+        }
+    }
+
+    private boolean tokenEquals(String word)
+    {
+        int length = m_tokenEnd - m_tokenStart;
+        if (length != word.length())
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (m_line[m_tokenStart + i] != word.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private double nextNumber() throws IOException
+    {
+        expectToken();
+        double value = parseDouble(m_line, m_tokenStart, m_tokenEnd);
+        if (!Double.isFinite(value))
+        {
+            throw error("Bad number");
+        }
+        return value;
+    }
+
+    private double nextVelocity() throws IOException
+    {
+        double value = nextNumber();
+        if (value < 0)
+        {
+            throw error("Negative velocity");
+        }
+        return value;
+    }
+
+    private long nextCount() throws IOException
+    {
+        double value = nextNumber();
+        if (value < 0 || value != Math.rint(value))
+        {
+            throw error("Bad count");
+        }
+        return (long)value;
+    }
+
+    private long nextSeed() throws IOException
+    {
+        expectToken();
+        return Long.parseLong(new String(m_line, m_tokenStart, m_tokenEnd - m_tokenStart));
+    }
+
+    /**
+     * Разбирает десятичное число без создания строки. Если в мантиссе не
+     * больше 15 значащих цифр, а десятичный порядок не больше 22 по модулю,
+     * и мантисса, и степень десяти точно представимы в double, так что одно
+     * умножение или деление даёт правильно округлённый результат, как
+     * у Double.parseDouble. Остальные записи отдаются Double.parseDouble.
+     */
+    static double parseDouble(char[] chars, int start, int end)
+    {
+        int position = start;
+        boolean negative = false;
+        if (position < end && (chars[position] == '-' || chars[position] == '+'))
+        {
+            negative = chars[position] == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        while (position < end && chars[position] >= '0' && chars[position] <= '9')
+        {
+            if (mantissa != 0 || chars[position] != '0')
+            {
+                mantissa = mantissa * 10 + (chars[position] - '0');
+                digits++;
+            }
+            position++;
+            any = true;
+            if (digits > 15)
+            {
+                return slowParseDouble(chars, start, end);
+            }
+        }
+        if (position < end && chars[position] == '.')
+        {
+            position++;
+            while (position < end && chars[position] >= '0' && chars[position] <= '9')
+            {
+                if (mantissa != 0 || chars[position] != '0')
+                {
+                    mantissa = mantissa * 10 + (chars[position] - '0');
+                    digits++;
+                }
+                exponent--;
+                position++;
+                any = true;
+                if (digits > 15)
+                {
+                    return slowParseDouble(chars, start, end);
+                }
+            }
+        }
+        if (!any)
+        {
+            return slowParseDouble(chars, start, end);
+        }
+        if (position < end && (chars[position] == 'e' || chars[position] == 'E'))
+        {
+            position++;
+            boolean negativeExponent = false;
+            if (position < end && (chars[position] == '-' || chars[position] == '+'))
+            {
+                negativeExponent = chars[position] == '-';
+                position++;
+            }
+            int written = 0;
+            int value = 0;
+            while (position < end && chars[position] >= '0' && chars[position] <= '9' && written < 4)
+            {
+                value = value * 10 + (chars[position] - '0');
+                position++;
+                written++;
+            }
+            if (written == 0 || written == 4)
+            {
+                return slowParseDouble(chars, start, end);
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (position != end || exponent < -22 || exponent > 22)
+        {
+            return slowParseDouble(chars, start, end);
+        }
+        double result = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -result : result;
+    }
+
+    private static double slowParseDouble(char[] chars, int start, int end)
+    {
+        return Double.parseDouble(new String(chars, start, end - start));
+    }
+
+    private IOException error(String message)
+    {
+        return new IOException(message + " at line " + m_lineNumber + ": " + lineText());
+    }
+
+    private String lineText()
+    {
+        return new String(m_line, 0, m_lineLength).trim();
+    }
+}
@@ -0,0 +1,387 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Продвигает мир роботов фиксированными шагами времени независимо от отрисовки.
+ * Не зависит от AWT, поэтому может работать без окна на максимальной скорости
+ * через {@link #step()} и {@link #runFor(double)}, а в окне - через
+ * {@link #advance(double)}, накапливающий реально прошедшее время.
+ */
+public class SimulationEngine
+{
+    public static final double DEFAULT_TIME_STEP = 10;
+    private static final int MAX_TICKS_PER_ADVANCE = 100;
+
+    private final RobotWorld m_world;
+    private final double m_timeStep;
+    private final SnapshotBuffer m_snapshots = new SnapshotBuffer();
+    private final SpatialGrid m_index = new SpatialGrid();
+    private final CollisionResolver m_collisions = new CollisionResolver();
+    private final PathPlanner m_planner = new PathPlanner();
+    private volatile ObstacleMap m_obstacles = ObstacleMap.empty();
+    private volatile boolean m_robotCollisions = true;
+
+    private volatile WorldUpdater m_updater = WorldUpdater.sequential();
+    private SimulationRecorder m_recorder;
+
+    private long m_tickCount;
+    private double m_accumulator;
+    private int m_movingRobots = -1;
+
+    public SimulationEngine(RobotWorld world)
+    {
+        this(world, DEFAULT_TIME_STEP);
+    }
+
+    public SimulationEngine(RobotWorld world, double timeStep)
+    {
+        if (!(timeStep > 0))
+        {
+            throw new IllegalArgumentException("timeStep must be positive: " + timeStep);
+        }
+        m_world = world;
+        m_timeStep = timeStep;
+        m_index.update(m_world);
+        m_snapshots.publish(m_world, 0);
+    }
+
+    public RobotWorld getWorld()
+    {
+        return m_world;
+    }
+
+    /**
+     * Снимки публикуются после каждого вызова, изменяющего мир, и могут
+     * читаться из другого потока без блокировки движка.
+     */
+    public SnapshotBuffer getSnapshots()
+    {
+        return m_snapshots;
+    }
+
+    public WorldUpdater getUpdater()
+    {
+        return m_updater;
+    }
+
+    /**
+     * Например, {@link ParallelWorldUpdater} для обновления роботов на нескольких ядрах.
+     */
+    public void setUpdater(WorldUpdater updater)
+    {
+        m_updater = updater;
+    }
+
+    public ObstacleMap getObstacles()
+    {
+        return m_obstacles;
+    }
+
+    public synchronized void setObstacles(ObstacleMap obstacles)
+    {
+        if (m_recorder != null)
+        {
+            m_recorder.recordObstacles(m_tickCount, obstacles);
+        }
+        m_obstacles = obstacles;
+        m_planner.setObstacles(obstacles);
+        if (obstacles.isEmpty())
+        {
+            m_world.resetWaypoints();
+        }
+        m_movingRobots = -1;
+    }
+
+    public boolean isRobotCollisionsEnabled()
+    {
+        return m_robotCollisions;
+    }
+
+    public synchronized void setRobotCollisionsEnabled(boolean enabled)
+    {
+        if (m_recorder != null)
+        {
+            m_recorder.recordRobotCollisions(m_tickCount, enabled);
+        }
+        m_robotCollisions = enabled;
+    }
+
+    public synchronized void setTarget(double x, double y)
+    {
+        m_world.setTargetForAll(x, y);
+        if (m_recorder != null)
+        {
+            m_recorder.recordTarget(m_tickCount, SimulationRecorder.ALL_ROBOTS, x, y);
+        }
+        m_movingRobots = -1;
+        publish();
+    }
+
+    public synchronized void setTarget(int robot, double x, double y)
+    {
+        m_world.setTarget(robot, x, y);
+        if (m_recorder != null)
+        {
+            m_recorder.recordTarget(m_tickCount, robot, x, y);
+        }
+        m_movingRobots = -1;
+        publish();
+    }
+
+    public synchronized SimulationRecorder getRecorder()
+    {
+        return m_recorder;
+    }
+
+    /**
+     * Начинает запись входов и состояния в recorder, начиная с текущего
+     * состояния мира; null прекращает запись. Закрывает запись вызывающий.
+     */
+    public synchronized void setRecorder(SimulationRecorder recorder)
+    {
+        m_recorder = recorder;
+        if (recorder != null && recorder.begin(m_world, m_tickCount, m_obstacles, m_robotCollisions))
+        {
+            resynchronize();
+        }
+    }
+
+    /**
+     * Заменяет состояние мира состоянием из записи на шаге tick.
+     */
+    synchronized void restore(long tick, int count, double[][] state)
+    {
+        m_world.restoreState(count, state);
+        m_tickCount = tick;
+        m_accumulator = 0;
+        m_movingRobots = -1;
+        m_index.clear();
+        m_index.update(m_world);
+        resynchronize();
+        publish();
+    }
+
+    /**
+     * Копия состояния мира для {@link WorldCheckpoint}. Кэши маршрутов
+     * не трогаются: их сброс посреди прогона разошёлся бы с записью,
+     * которая сбрасывает их только на полных кадрах. Восстановленный мир
+     * начинает с чистых кэшей в {@link #restore(long, int, double[][])}.
+     */
+    synchronized WorldCheckpoint checkpoint()
+    {
+        int count = m_world.size();
+        double[][] arrays = m_world.stateArrays();
+        double[][] state = new double[RobotWorld.STATE_FIELDS][];
+        for (int field = 0; field < RobotWorld.STATE_FIELDS; field++)
+        {
+            state[field] = Arrays.copyOf(arrays[field], count);
+        }
+        return new WorldCheckpoint(m_tickCount, count, state, m_obstacles, m_robotCollisions);
+    }
+
+    synchronized void restore(WorldCheckpoint checkpoint)
+    {
+        setObstacles(checkpoint.obstacles());
+        setRobotCollisionsEnabled(checkpoint.isRobotCollisionsEnabled());
+        restore(checkpoint.getTick(), checkpoint.size(), checkpoint.state());
+        m_snapshots.setClock(m_tickCount + 1);
+    }
+
+    /**
+     * Забывает кэши маршрутов, оставляя роботам текущие промежуточные точки.
+     * Дальше модель зависит только от состояния мира, записанного в полном
+     * кадре, поэтому делается и при записи кадра, и при его чтении.
+     */
+    void resynchronize()
+    {
+        m_planner.invalidate();
+        m_planner.keepWaypoints(m_world);
+    }
+
+    /**
+     * Копирует текущее состояние мира в target, например чтобы отрисовать
+     * его в другом потоке, не задерживая движок и не занимая буферы
+     * {@link #getSnapshots()}.
+     */
+    public synchronized void copySnapshot(WorldSnapshot target)
+    {
+        target.copyFrom(m_world, m_tickCount, m_tickCount);
+    }
+
+    /**
+     * Индекс ближайшего к точке робота не дальше maxDistance или -1.
+     */
+    public synchronized int findNearestRobot(double x, double y, double maxDistance)
+    {
+        syncIndex();
+        return m_index.findNearest(x, y, maxDistance);
+    }
+
+    public synchronized int findRobotsInRange(double x, double y, double radius, int[] result)
+    {
+        syncIndex();
+        return m_index.findInRange(x, y, radius, result);
+    }
+
+    private void syncIndex()
+    {
+        if (m_index.size() != m_world.size())
+        {
+            m_index.update(m_world);
+        }
+    }
+
+    public double getTimeStep()
+    {
+        return m_timeStep;
+    }
+
+    public synchronized long getTickCount()
+    {
+        return m_tickCount;
+    }
+
+    /**
+     * Мир неподвижен, если на последнем шаге все роботы уже стояли у своих
+     * целей и после этого цели не менялись.
+     */
+    public synchronized boolean isIdle()
+    {
+        return m_movingRobots == 0;
+    }
+
+    /**
+     * Сбрасывает накопленное время, чтобы пауза в вызовах {@link #advance(double)}
+     * не превратилась в рывок при возобновлении.
+     */
+    public synchronized void resetClock()
+    {
+        m_accumulator = 0;
+        m_snapshots.setClock(m_tickCount + 1);
+    }
+
+    public synchronized double getSimulatedTime()
+    {
+        return m_tickCount * m_timeStep;
+    }
+
+    public void step()
+    {
+        step(1);
+    }
+
+    public void step(long ticks)
+    {
+        synchronized (this)
+        {
+            for (long i = 0; i < ticks; i++)
+            {
+                if (i == ticks - 1)
+                {
+                    m_snapshots.capturePrevious(m_world);
+                }
+                tick();
+            }
+            publish();
+            m_snapshots.setClock(m_tickCount + 1);
+        }
+        drainRecorder();
+    }
+
+    /**
+     * Запись в файл идёт после шагов и без блокировки движка, чтобы диск
+     * не задерживал окно и другие потоки, обращающиеся к модели.
+     */
+    private void drainRecorder()
+    {
+        SimulationRecorder recorder = getRecorder();
+        if (recorder != null)
+        {
+            recorder.drain();
+        }
+    }
+
+    private void tick()
+    {
+        if (m_recorder != null && m_recorder.beforeTick(m_world, m_tickCount))
+        {
+            resynchronize();
+        }
+        if (!m_obstacles.isEmpty())
+        {
+            m_planner.assignWaypoints(m_world);
+        }
+        m_movingRobots = m_updater.update(m_world, m_timeStep);
+        m_index.update(m_world);
+        if (m_collisions.resolve(m_world, m_index, m_obstacles, m_robotCollisions))
+        {
+            // иначе поиск роботов между шагами видел бы положения до разведения
+            m_index.update(m_world);
+        }
+        m_tickCount++;
+        if (m_recorder != null && m_recorder.afterTick(m_world, m_tickCount))
+        {
+            resynchronize();
+        }
+    }
+
+    private void publish()
+    {
+        m_snapshots.publish(m_world, m_tickCount);
+    }
+
+    /**
+     * Прогоняет модель на заданное модельное время так быстро, как возможно.
+     * Возвращает число выполненных шагов.
+     */
+    public long runFor(double simulatedMillis)
+    {
+        long ticks = (long)Math.floor(simulatedMillis / m_timeStep);
+        step(ticks);
+        return ticks;
+    }
+
+    /**
+     * Учитывает реально прошедшее время и выполняет столько целых шагов,
+     * сколько в него помещается; остаток переносится на следующий вызов.
+     * Число шагов за вызов ограничено, чтобы после долгой паузы модель
+     * не пыталась догнать реальное время бесконечно. Остаток задаёт
+     * долю интерполяции между двумя последними шагами при отрисовке.
+     */
+    public int advance(double elapsedMillis)
+    {
+        int ticks;
+        synchronized (this)
+        {
+            ticks = advanceClock(elapsedMillis);
+        }
+        drainRecorder();
+        return ticks;
+    }
+
+    private int advanceClock(double elapsedMillis)
+    {
+        m_accumulator += elapsedMillis;
+        int ticks = (int)Math.min(Math.floor(m_accumulator / m_timeStep), MAX_TICKS_PER_ADVANCE);
+        for (int i = 0; i < ticks; i++)
+        {
+            if (i == ticks - 1)
+            {
+                m_snapshots.capturePrevious(m_world);
+            }
+            tick();
+            m_accumulator -= m_timeStep;
+        }
+        if (ticks == MAX_TICKS_PER_ADVANCE)
+        {
+            m_accumulator = 0;
+        }
+        if (ticks > 0)
+        {
+            publish();
+        }
+        m_snapshots.setClock(m_tickCount + Math.min(m_accumulator / m_timeStep, 1));
+        return ticks;
+    }
+}
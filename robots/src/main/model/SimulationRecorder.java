@@ -0,0 +1,471 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Записывает прогон модели так, чтобы его можно было повторить
+ * в {@link SimulationReplay}: входы (смену целей, препятствий, столкновений)
+ * с номерами шагов и периодические кадры состояния мира.
+ *
+ * Формат: int MAGIC, int FORMAT_VERSION, double шаг модели, int период кадров,
+ * имя класса ядра кинематики (длина байтом и ASCII), затем записи подряд:
+ * byte тип, число шагов от предыдущей записи (varint), данные. Кадр
+ * начинается с long длины данных, чтобы при чтении его можно было пропустить,
+ * и содержит число роботов и RobotWorld.STATE_FIELDS столбцов. В полном кадре
+ * значения записаны как есть. В разностном перед столбцом стоит байт
+ * кодирования: COLUMN_RAW - значения как есть, COLUMN_XOR - XOR с битами
+ * значения в предыдущем кадре, COLUMN_LINEAR - XOR с продолжением по прямой
+ * через два предыдущих кадра; XOR пишется без нулевых байтов по краям
+ * ({@link RecordOutput#putTrimmedLong(long)}). Для каждого столбца берётся
+ * самое короткое, так что он не длиннее столбца полного кадра больше чем
+ * на байт. Неизменившееся значение, например цель, занимает один байт;
+ * координата движущегося робота по прямой - около пяти байтов.
+ * Полный кадр пишется каждый m_keyframeInterval-й раз и всегда, когда число
+ * роботов изменилось в обход движка. После полного кадра движок сбрасывает
+ * кэши планировщика, так что с любого полного кадра прогон повторяется точно.
+ *
+ * Методы записи вызываются движком под его блокировкой и только кодируют
+ * данные в буферы; в файл их пишет {@link #drain()}, который движок вызывает,
+ * отпустив блокировку, и который не держит во время записи и блокировку
+ * самого SimulationRecorder. Ошибка записи выключает запись, но не модель.
+ */
+public class SimulationRecorder implements AutoCloseable
+{
+    public static final int DEFAULT_FRAME_INTERVAL = 100;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 10;
+    public static final int ALL_ROBOTS = -1;
+
+    static final int MAGIC = 0x52524543;
+    static final int FORMAT_VERSION = 3;
+
+    static final int END = 0;
+    static final int TARGET = 1;
+    static final int OBSTACLES = 2;
+    static final int ROBOT_COLLISIONS = 3;
+    static final int KEYFRAME = 4;
+    static final int DELTA_FRAME = 5;
+
+    static final int COLUMN_RAW = 0;
+    static final int COLUMN_XOR = 1;
+    static final int COLUMN_LINEAR = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel m_channel;
+    private final RecordOutput m_output;
+    private final double m_timeStep;
+    private final int m_frameInterval;
+    private final int m_keyframeInterval;
+    private final Object m_drainLock = new Object();
+    /**
+     * Буферы, которые drain пишет без блокировки записи; только под m_drainLock.
+     */
+    private final List<ByteBuffer> m_draining = new ArrayList<>();
+
+    private double[][] m_frame = new double[RobotWorld.STATE_FIELDS][0];
+    private double[][] m_olderFrame = new double[RobotWorld.STATE_FIELDS][0];
+    private int m_frameCount = -1;
+    private int m_olderCount;
+    private long m_framesWritten;
+    private long m_lastTick = -1;
+    private long m_currentTick;
+    private boolean m_closed;
+
+    public SimulationRecorder(Path file) throws IOException
+    {
+        this(file, SimulationEngine.DEFAULT_TIME_STEP, DEFAULT_FRAME_INTERVAL, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * timeStep должен совпадать с шагом движка, который будет записываться;
+     * кадр пишется каждые frameInterval шагов, каждый keyframeInterval-й
+     * кадр - полный.
+     */
+    public SimulationRecorder(Path file, double timeStep, int frameInterval, int keyframeInterval)
+        throws IOException
+    {
+        if (frameInterval <= 0 || keyframeInterval <= 0)
+        {
+            throw new IllegalArgumentException("frameInterval " + frameInterval + ", keyframeInterval " + keyframeInterval);
+        }
+        m_timeStep = timeStep;
+        m_frameInterval = frameInterval;
+        m_keyframeInterval = keyframeInterval;
+        m_channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        m_output = new RecordOutput(m_channel, BUFFER_SIZE);
+    }
+
+    public synchronized boolean isClosed()
+    {
+        return m_closed;
+    }
+
+    /**
+     * Пишет заголовок и полный кадр. Как и beforeTick и afterTick, возвращает
+     * true, если записан полный кадр: движок после этого сбрасывает кэши
+     * маршрутов, и повтор с этого кадра идёт так же, как исходный прогон.
+     */
+    synchronized boolean begin(RobotWorld world, long tick, ObstacleMap obstacles, boolean robotCollisions)
+    {
+        if (m_closed || m_lastTick >= 0)
+        {
+            return false;
+        }
+        try
+        {
+            m_output.putInt(MAGIC);
+            m_output.putInt(FORMAT_VERSION);
+            m_output.putDouble(m_timeStep);
+            m_output.putInt(m_frameInterval);
+            byte[] kernel = world.getKernel().getClass().getName().getBytes(StandardCharsets.US_ASCII);
+            m_output.putByte(kernel.length);
+            for (byte b : kernel)
+            {
+                m_output.putByte(b);
+            }
+            // первая запись - абсолютный номер шага
+            m_lastTick = 0;
+            writeObstacles(tick, obstacles);
+            writeRobotCollisions(tick, robotCollisions);
+            writeFrame(world, tick, true);
+            return true;
+        }
+        catch (IOException e)
+        {
+            fail(e);
+            return false;
+        }
+    }
+
+    synchronized void recordTarget(long tick, int robot, double x, double y)
+    {
+        if (m_closed)
+        {
+            return;
+        }
+        try
+        {
+            writeHeader(TARGET, tick);
+            m_output.putVarLong(robot + 1L);
+            m_output.putDouble(x);
+            m_output.putDouble(y);
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+    }
+
+    synchronized void recordObstacles(long tick, ObstacleMap obstacles)
+    {
+        if (m_closed)
+        {
+            return;
+        }
+        try
+        {
+            writeObstacles(tick, obstacles);
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+    }
+
+    synchronized void recordRobotCollisions(long tick, boolean enabled)
+    {
+        if (m_closed)
+        {
+            return;
+        }
+        try
+        {
+            writeRobotCollisions(tick, enabled);
+        }
+        catch (IOException e)
+        {
+            fail(e);
+        }
+    }
+
+    /**
+     * Роботов добавили или убрали мимо движка: без полного кадра
+     * повторить это при воспроизведении было бы нельзя.
+     */
+    synchronized boolean beforeTick(RobotWorld world, long tick)
+    {
+        if (m_closed || world.size() == m_frameCount)
+        {
+            return false;
+        }
+        try
+        {
+            writeFrame(world, tick, true);
+            return true;
+        }
+        catch (IOException e)
+        {
+            fail(e);
+            return false;
+        }
+    }
+
+    synchronized boolean afterTick(RobotWorld world, long tick)
+    {
+        m_currentTick = tick;
+        if (m_closed || tick % m_frameInterval != 0)
+        {
+            return false;
+        }
+        try
+        {
+            boolean keyframe = m_framesWritten % m_keyframeInterval == 0;
+            writeFrame(world, tick, keyframe);
+            return keyframe;
+        }
+        catch (IOException e)
+        {
+            fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * Пишет в файл накопленные при записи буферы. Под блокировкой записи
+     * буферы только забираются, а пишутся уже без неё, так что шаги движка
+     * и смена целей не ждут диска. Вызывается без блокировки движка;
+     * m_drainLock держит вызовы по порядку и не даёт закрыть канал
+     * посреди записи.
+     */
+    void drain()
+    {
+        synchronized (m_drainLock)
+        {
+            long position;
+            synchronized (this)
+            {
+                if (m_closed)
+                {
+                    return;
+                }
+                position = m_output.takePending(m_draining);
+            }
+            try
+            {
+                m_output.write(m_draining, position);
+            }
+            catch (IOException e)
+            {
+                synchronized (this)
+                {
+                    if (!m_closed)
+                    {
+                        fail(e);
+                    }
+                }
+            }
+            synchronized (this)
+            {
+                m_output.recycle(m_draining);
+            }
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        synchronized (m_drainLock)
+        {
+            finish();
+        }
+    }
+
+    /**
+     * Дописывает конец записи и закрывает файл. Из fail вызывается напрямую:
+     * там уже взята блокировка записи, а m_drainLock берётся только до неё.
+     */
+    private synchronized void finish()
+    {
+        if (m_closed)
+        {
+            return;
+        }
+        m_closed = true;
+        try
+        {
+            if (m_lastTick >= 0)
+            {
+                writeHeader(END, Math.max(m_currentTick, m_lastTick));
+            }
+            m_output.flush();
+            m_channel.close();
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeHeader(int type, long tick) throws IOException
+    {
+        m_output.putByte(type);
+        m_output.putVarLong(tick - m_lastTick);
+        m_lastTick = tick;
+    }
+
+    private void writeObstacles(long tick, ObstacleMap obstacles) throws IOException
+    {
+        writeHeader(OBSTACLES, tick);
+        m_output.putVarLong(obstacles.getRectangleCount());
+        for (int i = 0; i < obstacles.getRectangleCount(); i++)
+        {
+            m_output.putDouble(obstacles.getRectangleX(i));
+            m_output.putDouble(obstacles.getRectangleY(i));
+            m_output.putDouble(obstacles.getRectangleWidth(i));
+            m_output.putDouble(obstacles.getRectangleHeight(i));
+        }
+        m_output.putVarLong(obstacles.getCircleCount());
+        for (int i = 0; i < obstacles.getCircleCount(); i++)
+        {
+            m_output.putDouble(obstacles.getCircleX(i));
+            m_output.putDouble(obstacles.getCircleY(i));
+            m_output.putDouble(obstacles.getCircleRadius(i));
+        }
+    }
+
+    private void writeRobotCollisions(long tick, boolean enabled) throws IOException
+    {
+        writeHeader(ROBOT_COLLISIONS, tick);
+        m_output.putByte(enabled ? 1 : 0);
+    }
+
+    private void writeFrame(RobotWorld world, long tick, boolean keyframe) throws IOException
+    {
+        int count = world.size();
+        double[][] state = world.stateArrays();
+        writeHeader(keyframe ? KEYFRAME : DELTA_FRAME, tick);
+        long lengthPosition = m_output.position();
+        m_output.putLong(0);
+        long start = m_output.position();
+        m_output.putVarLong(count);
+        int previousCount = Math.max(m_frameCount, 0);
+        for (int field = 0; field < RobotWorld.STATE_FIELDS; field++)
+        {
+            double[] values = state[field];
+            if (keyframe)
+            {
+                for (int i = 0; i < count; i++)
+                {
+                    m_output.putDouble(values[i]);
+                }
+                continue;
+            }
+            double[] previous = m_frame[field];
+            double[] older = m_olderFrame[field];
+            int encoding = chooseEncoding(values, count, previous, previousCount, older, m_olderCount);
+            m_output.putByte(encoding);
+            for (int i = 0; i < count; i++)
+            {
+                if (encoding == COLUMN_RAW)
+                {
+                    m_output.putDouble(values[i]);
+                }
+                else
+                {
+                    m_output.putTrimmedLong(Double.doubleToRawLongBits(values[i])
+                        ^ referenceBits(encoding, previous, previousCount, older, m_olderCount, i));
+                }
+            }
+        }
+        m_output.patchLong(lengthPosition, m_output.position() - start);
+        if (m_frame[0].length < count)
+        {
+            for (int field = 0; field < RobotWorld.STATE_FIELDS; field++)
+            {
+                int length = Math.max(count, 2 * m_frame[field].length);
+                m_frame[field] = Arrays.copyOf(m_frame[field], length);
+                m_olderFrame[field] = Arrays.copyOf(m_olderFrame[field], length);
+            }
+        }
+        double[][] older = m_olderFrame;
+        m_olderFrame = m_frame;
+        m_frame = older;
+        for (int field = 0; field < RobotWorld.STATE_FIELDS; field++)
+        {
+            System.arraycopy(state[field], 0, m_frame[field], 0, count);
+        }
+        // предсказание по двум кадрам не заглядывает за полный кадр: с него начинается повтор
+        m_olderCount = keyframe ? 0 : previousCount;
+        m_frameCount = count;
+        m_framesWritten++;
+    }
+
+    /**
+     * Выбирает для столбца разностного кадра кодирование, дающее меньше байтов.
+     */
+    private static int chooseEncoding(double[] values, int count, double[] previous, int previousCount,
+        double[] older, int olderCount)
+    {
+        long xorSize = 0;
+        long linearSize = 0;
+        for (int i = 0; i < count; i++)
+        {
+            long bits = Double.doubleToRawLongBits(values[i]);
+            xorSize += trimmedSize(bits ^ referenceBits(COLUMN_XOR, previous, previousCount, older, olderCount, i));
+            if (olderCount > 0)
+            {
+                linearSize += trimmedSize(bits ^ referenceBits(COLUMN_LINEAR, previous, previousCount, older, olderCount, i));
+            }
+        }
+        long rawSize = 8L * count;
+        if (olderCount > 0 && linearSize < xorSize && linearSize < rawSize)
+        {
+            return COLUMN_LINEAR;
+        }
+        return xorSize < rawSize ? COLUMN_XOR : COLUMN_RAW;
+    }
+
+    private static int trimmedSize(long value)
+    {
+        if (value == 0)
+        {
+            return 1;
+        }
+        return 9 - (Long.numberOfLeadingZeros(value) >>> 3) - (Long.numberOfTrailingZeros(value) >>> 3);
+    }
+
+    /**
+     * Биты, с которыми складывается по XOR i-е значение столбца: значение
+     * в предыдущем кадре или его продолжение по прямой через два предыдущих.
+     * Общее для записи и {@link SimulationReplay}.
+     */
+    static long referenceBits(int encoding, double[] previous, int previousCount, double[] older, int olderCount,
+        int i)
+    {
+        if (i >= previousCount)
+        {
+            return 0;
+        }
+        if (encoding == COLUMN_LINEAR && i < olderCount)
+        {
+            return Double.doubleToRawLongBits(2 * previous[i] - older[i]);
+        }
+        return Double.doubleToRawLongBits(previous[i]);
+    }
+
+    private void fail(IOException e)
+    {
+        // модель не зависит от лога, поэтому об ошибке - только в stderr
+        e.printStackTrace();
+        finish();
+    }
+}
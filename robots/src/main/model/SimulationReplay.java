@@ -0,0 +1,483 @@
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Повторяет прогон, записанный {@link SimulationRecorder}, на собственном
+ * движке без окна и так быстро, как позволяет процессор. Входы применяются
+ * на тех же шагах, что и при записи, а кадры состояния сверяются с моделью:
+ * {@link #getMaxDeviation()} показывает, насколько повтор разошёлся с записью.
+ *
+ * {@link #seek(long)} восстанавливает мир из ближайшего полного кадра
+ * не позже нужного шага и досчитывает остаток шагами модели, сверяя
+ * встреченные разностные кадры. При записи полного кадра движок сбрасывает кэши
+ * маршрутов, поэтому повтор с любого полного кадра совпадает с исходным
+ * прогоном, если ядро кинематики то же.
+ */
+public class SimulationReplay implements AutoCloseable
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel m_channel;
+    private final RecordInput m_input;
+    private final SimulationEngine m_engine;
+    private final String m_kernelName;
+    private final int m_frameInterval;
+    private final long m_dataStart;
+    /**
+     * Шаг, позиция в файле и признак полного кадра для каждого кадра.
+     */
+    private final List<long[]> m_frames = new ArrayList<>();
+    private long m_firstTick;
+    private long m_lastTick;
+
+    private long m_recordTick;
+    private double[][] m_frame = new double[RobotWorld.STATE_FIELDS][0];
+    private double[][] m_olderFrame = new double[RobotWorld.STATE_FIELDS][0];
+    private int m_frameCount;
+    private int m_olderCount;
+    private boolean m_frameValid;
+    private double m_maxDeviation;
+    private long m_comparedFrames;
+
+    public SimulationReplay(Path file) throws IOException
+    {
+        m_channel = FileChannel.open(file, StandardOpenOption.READ);
+        try
+        {
+            m_input = new RecordInput(m_channel, BUFFER_SIZE);
+            if (m_input.getInt() != SimulationRecorder.MAGIC)
+            {
+                throw new IOException("Not a simulation recording: " + file);
+            }
+            int version = m_input.getInt();
+            if (version != SimulationRecorder.FORMAT_VERSION)
+            {
+                throw new IOException("Unsupported recording format " + version + ": " + file);
+            }
+            double timeStep = m_input.getDouble();
+            m_frameInterval = m_input.getInt();
+            byte[] kernel = new byte[m_input.getByte()];
+            for (int i = 0; i < kernel.length; i++)
+            {
+                kernel[i] = (byte)m_input.getByte();
+            }
+            m_kernelName = new String(kernel, StandardCharsets.US_ASCII);
+            m_dataStart = m_input.position();
+            index();
+
+            RobotWorld world = new RobotWorld();
+            KinematicsKernel vector = KinematicsKernel.vector();
+            world.setKernel(m_kernelName.equals(KinematicsKernel.VECTOR_KERNEL_CLASS) && vector != null
+                ? vector : KinematicsKernel.scalar());
+            m_engine = new SimulationEngine(world, timeStep);
+            rewind();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            m_channel.close();
+            throw e;
+        }
+    }
+
+    public SimulationEngine getEngine()
+    {
+        return m_engine;
+    }
+
+    /**
+     * Ядро кинематики, с которым шла запись. Если повтор идёт на другом,
+     * результат совпадёт с записью лишь приближённо.
+     */
+    public String getRecordedKernel()
+    {
+        return m_kernelName;
+    }
+
+    public boolean isKernelMatching()
+    {
+        return m_engine.getWorld().getKernel().getClass().getName().equals(m_kernelName);
+    }
+
+    public int getFrameInterval()
+    {
+        return m_frameInterval;
+    }
+
+    public long getTick()
+    {
+        return m_engine.getTickCount();
+    }
+
+    /**
+     * Шаг, на котором началась запись.
+     */
+    public long getFirstTick()
+    {
+        return m_firstTick;
+    }
+
+    /**
+     * Последний записанный шаг; у оборванной записи - шаг последней целой записи.
+     */
+    public long getLastTick()
+    {
+        return m_lastTick;
+    }
+
+    /**
+     * Шаги, на которых записаны полные кадры, по возрастанию.
+     */
+    public long[] getKeyframeTicks()
+    {
+        return m_frames.stream().filter(frame -> frame[2] != 0).mapToLong(frame -> frame[0]).toArray();
+    }
+
+    /**
+     * Наибольшее расхождение положений роботов с записанными кадрами,
+     * встреченными при повторе.
+     */
+    public double getMaxDeviation()
+    {
+        return m_maxDeviation;
+    }
+
+    public long getComparedFrames()
+    {
+        return m_comparedFrames;
+    }
+
+    /**
+     * Повторяет запись до шага tick (не дальше конца записи) и возвращает
+     * достигнутый шаг.
+     */
+    public long runTo(long tick) throws IOException
+    {
+        tick = Math.max(m_firstTick, Math.min(tick, m_lastTick));
+        while (m_input.hasRemaining())
+        {
+            long position = m_input.position();
+            int type = m_input.getByte();
+            long recordTick = m_recordTick + m_input.getVarLong();
+            if (type == SimulationRecorder.END || recordTick > tick)
+            {
+                m_input.seek(position);
+                break;
+            }
+            m_recordTick = recordTick;
+            stepTo(recordTick);
+            apply(type, recordTick);
+        }
+        stepTo(tick);
+        return m_engine.getTickCount();
+    }
+
+    public long runToEnd() throws IOException
+    {
+        return runTo(m_lastTick);
+    }
+
+    /**
+     * Переходит к шагу tick через ближайший полный кадр, не повторяя
+     * запись с начала.
+     */
+    public long seek(long tick) throws IOException
+    {
+        tick = Math.max(m_firstTick, Math.min(tick, m_lastTick));
+        int keyframe = -1;
+        for (int i = 0; i < m_frames.size() && m_frames.get(i)[0] <= tick; i++)
+        {
+            if (m_frames.get(i)[2] != 0)
+            {
+                keyframe = i;
+            }
+        }
+        if (keyframe < 0)
+        {
+            rewind();
+            return runTo(tick);
+        }
+        // препятствия и столкновения берутся из последних записей до кадра,
+        // состояние мира - из полного кадра; разностные кадры после него
+        // сверяются уже при досчёте
+        long keyframePosition = m_frames.get(keyframe)[1];
+        m_input.seek(m_dataStart);
+        m_recordTick = 0;
+        while (m_input.position() <= keyframePosition)
+        {
+            long position = m_input.position();
+            int type = m_input.getByte();
+            m_recordTick += m_input.getVarLong();
+            if (type == SimulationRecorder.OBSTACLES)
+            {
+                m_engine.setObstacles(readObstacles());
+            }
+            else if (type == SimulationRecorder.ROBOT_COLLISIONS)
+            {
+                m_engine.setRobotCollisionsEnabled(m_input.getByte() != 0);
+            }
+            else if (position == keyframePosition)
+            {
+                readFrame(true);
+            }
+            else
+            {
+                skip(type);
+            }
+        }
+        m_engine.restore(m_recordTick, m_frameCount, m_frame);
+        return runTo(tick);
+    }
+
+    private void rewind() throws IOException
+    {
+        // до первой записи мир пуст, шаги до неё не нужны
+        m_input.seek(m_dataStart);
+        m_recordTick = 0;
+        m_frameValid = false;
+        m_engine.restore(m_firstTick, 0, m_frame);
+    }
+
+    private void stepTo(long tick)
+    {
+        long ticks = tick - m_engine.getTickCount();
+        if (ticks > 0)
+        {
+            m_engine.step(ticks);
+        }
+    }
+
+    private void apply(int type, long tick) throws IOException
+    {
+        switch (type)
+        {
+        case SimulationRecorder.TARGET:
+            int robot = (int)(m_input.getVarLong() - 1);
+            double x = m_input.getDouble();
+            double y = m_input.getDouble();
+            if (robot == SimulationRecorder.ALL_ROBOTS)
+            {
+                m_engine.setTarget(x, y);
+            }
+            else
+            {
+                m_engine.setTarget(robot, x, y);
+            }
+            break;
+        case SimulationRecorder.OBSTACLES:
+            m_engine.setObstacles(readObstacles());
+            break;
+        case SimulationRecorder.ROBOT_COLLISIONS:
+            m_engine.setRobotCollisionsEnabled(m_input.getByte() != 0);
+            break;
+        case SimulationRecorder.KEYFRAME:
+        case SimulationRecorder.DELTA_FRAME:
+            readFrame(type == SimulationRecorder.KEYFRAME);
+            RobotWorld world = m_engine.getWorld();
+            if (world.size() != m_frameCount)
+            {
+                // роботов добавили мимо движка - берём их из кадра
+                m_engine.restore(tick, m_frameCount, m_frame);
+            }
+            else
+            {
+                compare(world);
+                if (type == SimulationRecorder.KEYFRAME)
+                {
+                    m_engine.resynchronize();
+                }
+            }
+            break;
+        default:
+            throw new IOException("Unknown record type " + type + " at tick " + tick);
+        }
+    }
+
+    private void compare(RobotWorld world)
+    {
+        double[][] state = world.stateArrays();
+        double deviation = 0;
+        for (int i = 0; i < m_frameCount; i++)
+        {
+            deviation = Math.max(deviation, Math.abs(state[0][i] - m_frame[0][i]));
+            deviation = Math.max(deviation, Math.abs(state[1][i] - m_frame[1][i]));
+        }
+        m_maxDeviation = Math.max(m_maxDeviation, deviation);
+        m_comparedFrames++;
+    }
+
+    private ObstacleMap readObstacles() throws IOException
+    {
+        int rectangleCount = m_input.getVarInt();
+        double[] rectangles = new double[rectangleCount * 4];
+        for (int i = 0; i < rectangles.length; i++)
+        {
+            rectangles[i] = m_input.getDouble();
+        }
+        int circleCount = m_input.getVarInt();
+        double[] circles = new double[circleCount * 3];
+        for (int i = 0; i < circles.length; i++)
+        {
+            circles[i] = m_input.getDouble();
+        }
+        return rectangleCount + circleCount == 0
+            ? ObstacleMap.empty()
+            : new ObstacleMap(rectangles, rectangleCount, circles, circleCount);
+    }
+
+    private void readFrame(boolean keyframe) throws IOException
+    {
+        m_input.getLong();
+        int count = m_input.getVarInt();
+        if (!keyframe && !m_frameValid)
+        {
+            throw new IOException("Delta frame without a preceding frame at tick " + m_recordTick);
+        }
+        int previousCount = m_frameCount;
+        if (m_frame[0].length < count)
+        {
+            for (int field = 0; field < RobotWorld.STATE_FIELDS; field++)
+            {
+                int length = Math.max(count, 2 * m_frame[field].length);
+                m_frame[field] = Arrays.copyOf(m_frame[field], length);
+                m_olderFrame[field] = Arrays.copyOf(m_olderFrame[field], length);
+            }
+        }
+        for (int field = 0; field < RobotWorld.STATE_FIELDS; field++)
+        {
+            double[] values = m_frame[field];
+            double[] older = m_olderFrame[field];
+            int encoding = keyframe ? SimulationRecorder.COLUMN_RAW : m_input.getByte();
+            if (encoding > SimulationRecorder.COLUMN_LINEAR)
+            {
+                throw new IOException("Unknown column encoding " + encoding + " at tick " + m_recordTick);
+            }
+            for (int i = 0; i < count; i++)
+            {
+                double previous = values[i];
+                if (encoding == SimulationRecorder.COLUMN_RAW)
+                {
+                    values[i] = m_input.getDouble();
+                }
+                else
+                {
+                    values[i] = Double.longBitsToDouble(m_input.getTrimmedLong() ^ SimulationRecorder.referenceBits(
+                        encoding, values, previousCount, older, m_olderCount, i));
+                }
+                older[i] = previous;
+            }
+        }
+        m_olderCount = keyframe ? 0 : previousCount;
+        m_frameCount = count;
+        m_frameValid = true;
+    }
+
+    private void skip(int type) throws IOException
+    {
+        switch (type)
+        {
+        case SimulationRecorder.TARGET:
+            m_input.getVarLong();
+            m_input.getDouble();
+            m_input.getDouble();
+            break;
+        case SimulationRecorder.OBSTACLES:
+            readObstacles();
+            break;
+        case SimulationRecorder.ROBOT_COLLISIONS:
+            m_input.getByte();
+            break;
+        case SimulationRecorder.KEYFRAME:
+        case SimulationRecorder.DELTA_FRAME:
+            long length = m_input.getLong();
+            m_input.seek(m_input.position() + length);
+            m_frameValid = false;
+            break;
+        default:
+            throw new IOException("Unknown record type " + type + " at tick " + m_recordTick);
+        }
+    }
+
+    /**
+     * Один проход по записи: шаги и позиции полных кадров и последний шаг.
+     * Оборванная на середине запись читается до последней целой записи.
+     */
+    private void index() throws IOException
+    {
+        long tick = 0;
+        try
+        {
+            while (m_input.hasRemaining())
+            {
+                long position = m_input.position();
+                int type = m_input.getByte();
+                long recordTick = tick + m_input.getVarLong();
+                if (position == m_dataStart)
+                {
+                    m_firstTick = recordTick;
+                }
+                if (type == SimulationRecorder.END)
+                {
+                    tick = recordTick;
+                    break;
+                }
+                skip(type);
+                if (m_input.position() > m_channel.size())
+                {
+                    break;
+                }
+                tick = recordTick;
+                if (type == SimulationRecorder.KEYFRAME || type == SimulationRecorder.DELTA_FRAME)
+                {
+                    m_frames.add(new long[] { recordTick, position, type == SimulationRecorder.KEYFRAME ? 1 : 0 });
+                }
+            }
+        }
+        catch (EOFException e)
+        {
+            // запись оборвалась, например при аварийном завершении
+        }
+        m_lastTick = tick;
+        m_frameValid = false;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        m_channel.close();
+    }
+
+    /**
+     * Повтор записи из командной строки: файл записи и, необязательно,
+     * шаг, до которого повторять.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("Usage: SimulationReplay <recording> [tick]");
+            System.exit(2);
+        }
+        try (SimulationReplay replay = new SimulationReplay(Paths.get(args[0])))
+        {
+            long start = System.nanoTime();
+            long tick = args.length > 1 ? replay.seek(Long.parseLong(args[1])) : replay.runToEnd();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("tick %d of %d, %d robots, %.2f s (%.0fx real time)%n",
+                tick, replay.getLastTick(), replay.getEngine().getWorld().size(), seconds,
+                tick * replay.getEngine().getTimeStep() / 1000 / Math.max(seconds, 1e-9));
+            System.out.printf("kernel %s%s, %d frames compared, max deviation %g%n",
+                replay.getRecordedKernel(), replay.isKernelMatching() ? "" : " (replayed with another kernel)",
+                replay.getComparedFrames(), replay.getMaxDeviation());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Тройная буферизация снимков мира. Писатель заполняет свой задний буфер
+ * и атомарно меняет его местами со средним, читатель забирает средний
+ * в обмен на свой передний. Ни одна из сторон не ждёт другую и ничего
+ * не выделяет после того, как буферы выросли до размера мира.
+ * Читатель у буфера должен быть один (например, EDT).
+ * При каждом {@link #acquire()} снимку выставляется доля интерполяции
+ * по текущим часам модели.
+ */
+public class SnapshotBuffer
+{
+    private WorldSnapshot m_back = new WorldSnapshot();
+    private final AtomicReference<WorldSnapshot> m_middle = new AtomicReference<>(new WorldSnapshot());
+    private WorldSnapshot m_front = new WorldSnapshot();
+    private long m_version;
+    private volatile double m_clock;
+
+    /**
+     * Запоминает положения перед последним шагом, который войдёт
+     * в следующий опубликованный снимок.
+     */
+    void capturePrevious(RobotWorld world)
+    {
+        m_back.copyPreviousFrom(world);
+    }
+
+    void publish(RobotWorld world, long tick)
+    {
+        m_back.copyFrom(world, tick, ++m_version);
+        m_back = m_middle.getAndSet(m_back);
+    }
+
+    /**
+     * Модельное время в шагах, включая накопленную долю следующего шага.
+     */
+    void setClock(double ticks)
+    {
+        m_clock = ticks;
+    }
+
+    public WorldSnapshot acquire()
+    {
+        if (m_middle.get().getVersion() > m_front.getVersion())
+        {
+            m_front = m_middle.getAndSet(m_front);
+        }
+        // отрисовка отстаёт на шаг: снимок шага T показывает состояние
+        // между T - 1 и T, пока часы модели идут от T до T + 1
+        m_front.setInterpolation(Math.max(0, Math.min(1, m_clock - m_front.getTick())));
+        return m_front;
+    }
+}
@@ -0,0 +1,347 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Равномерная сетка для поиска ближайших роботов. Клетки хешируются в таблицу
+ * фиксированного размера, поэтому мир не ограничен по размеру. Каждый робот
+ * лежит в двусвязном списке своей клетки; {@link #update(RobotWorld)} после
+ * шага перекладывает только тех роботов, которые сменили клетку.
+ */
+public class SpatialGrid
+{
+    public static final double DEFAULT_CELL_SIZE = 32;
+    private static final int NONE = -1;
+
+    private final double m_cellSize;
+    private final int m_bucketMask;
+    private final int[] m_bucketHead;
+
+    private int m_count;
+    private int[] m_cellX = new int[0];
+    private int[] m_cellY = new int[0];
+    private int[] m_next = new int[0];
+    private int[] m_previous = new int[0];
+    private double[] m_positionX = new double[0];
+    private double[] m_positionY = new double[0];
+
+    private int m_minCellX;
+    private int m_minCellY;
+    private int m_maxCellX;
+    private int m_maxCellY;
+
+    public SpatialGrid()
+    {
+        this(DEFAULT_CELL_SIZE, 1 << 16);
+    }
+
+    /**
+     * bucketCount округляется вверх до степени двойки.
+     */
+    public SpatialGrid(double cellSize, int bucketCount)
+    {
+        if (!(cellSize > 0) || bucketCount <= 0)
+        {
+            throw new IllegalArgumentException("cellSize " + cellSize + ", bucketCount " + bucketCount);
+        }
+        int buckets = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+        m_cellSize = cellSize;
+        m_bucketMask = buckets - 1;
+        m_bucketHead = new int[buckets];
+        Arrays.fill(m_bucketHead, NONE);
+    }
+
+    public double getCellSize()
+    {
+        return m_cellSize;
+    }
+
+    public int size()
+    {
+        return m_count;
+    }
+
+    public void update(RobotWorld world)
+    {
+        int count = world.size();
+        if (count < m_count)
+        {
+            clear();
+        }
+        ensureCapacity(count);
+        int minCellX = Integer.MAX_VALUE;
+        int minCellY = Integer.MAX_VALUE;
+        int maxCellX = Integer.MIN_VALUE;
+        int maxCellY = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++)
+        {
+            double x = world.getPositionX(i);
+            double y = world.getPositionY(i);
+            m_positionX[i] = x;
+            m_positionY[i] = y;
+            int cellX = cellOf(x);
+            int cellY = cellOf(y);
+            if (i >= m_count)
+            {
+                insert(i, cellX, cellY);
+            }
+            else if (cellX != m_cellX[i] || cellY != m_cellY[i])
+            {
+                remove(i);
+                insert(i, cellX, cellY);
+            }
+            minCellX = Math.min(minCellX, cellX);
+            minCellY = Math.min(minCellY, cellY);
+            maxCellX = Math.max(maxCellX, cellX);
+            maxCellY = Math.max(maxCellY, cellY);
+        }
+        m_count = count;
+        m_minCellX = minCellX;
+        m_minCellY = minCellY;
+        m_maxCellX = maxCellX;
+        m_maxCellY = maxCellY;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(m_bucketHead, NONE);
+        m_count = 0;
+    }
+
+    /**
+     * Индекс ближайшего к точке робота или -1, если роботов нет.
+     */
+    public int findNearest(double x, double y)
+    {
+        return findNearest(x, y, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Индекс ближайшего робота не дальше maxDistance или -1.
+     */
+    public int findNearest(double x, double y, double maxDistance)
+    {
+        if (m_count == 0)
+        {
+            return NONE;
+        }
+        long centerX = cellOf(x);
+        long centerY = cellOf(y);
+        long maxRing = Math.max(
+            Math.max(Math.abs(centerX - m_minCellX), Math.abs(centerX - m_maxCellX)),
+            Math.max(Math.abs(centerY - m_minCellY), Math.abs(centerY - m_maxCellY)));
+        if (maxDistance != Double.POSITIVE_INFINITY)
+        {
+            maxRing = Math.min(maxRing, (long)Math.ceil(maxDistance / m_cellSize) + 1);
+        }
+        double bestDistanceSquared = maxDistance == Double.POSITIVE_INFINITY
+            ? Double.POSITIVE_INFINITY
+            : maxDistance * maxDistance;
+        if (isSparse((2 * maxRing + 1) * (2 * maxRing + 1)))
+        {
+            return findNearestLinear(x, y, bestDistanceSquared);
+        }
+        int best = NONE;
+        for (long ring = 0; ring <= maxRing; ring++)
+        {
+            for (long cellY = centerY - ring; cellY <= centerY + ring; cellY++)
+            {
+                boolean edgeRow = cellY == centerY - ring || cellY == centerY + ring;
+                long step = edgeRow ? 1 : 2 * ring;
+                for (long cellX = centerX - ring; cellX <= centerX + ring; cellX += step)
+                {
+                    for (int i = m_bucketHead[bucketOf(cellX, cellY)]; i != NONE; i = m_next[i])
+                    {
+                        if (m_cellX[i] != cellX || m_cellY[i] != cellY)
+                        {
+                            continue;
+                        }
+                        double diffX = m_positionX[i] - x;
+                        double diffY = m_positionY[i] - y;
+                        double distanceSquared = diffX * diffX + diffY * diffY;
+                        if (distanceSquared < bestDistanceSquared
+                            || (distanceSquared == bestDistanceSquared && i < best))
+                        {
+                            best = i;
+                            bestDistanceSquared = distanceSquared;
+                        }
+                    }
+                }
+            }
+            // всё, что лежит за кольцом ring, не ближе ring * m_cellSize
+            double covered = ring * m_cellSize;
+            if (best != NONE && bestDistanceSquared <= covered * covered)
+            {
+                break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Стоит ли вместо обхода cells клеток просмотреть всех роботов подряд:
+     * так запрос к редкой сетке с далёкими роботами не обходит миллиарды
+     * пустых клеток.
+     */
+    private boolean isSparse(long cells)
+    {
+        return cells < 0 || cells > 4L * m_count + 64;
+    }
+
+    private int findNearestLinear(double x, double y, double bestDistanceSquared)
+    {
+        int best = NONE;
+        for (int i = 0; i < m_count; i++)
+        {
+            double diffX = m_positionX[i] - x;
+            double diffY = m_positionY[i] - y;
+            double distanceSquared = diffX * diffX + diffY * diffY;
+            if (distanceSquared < bestDistanceSquared)
+            {
+                best = i;
+                bestDistanceSquared = distanceSquared;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Вызывает action для каждого робота на расстоянии не больше radius.
+     */
+    public void forEachInRange(double x, double y, double radius, IntConsumer action)
+    {
+        visitRange(x, y, radius, action, null);
+    }
+
+    /**
+     * Записывает в result индексы роботов на расстоянии не больше radius и
+     * возвращает их число; если result мал, лишние не записываются, но считаются.
+     */
+    public int findInRange(double x, double y, double radius, int[] result)
+    {
+        return visitRange(x, y, radius, null, result);
+    }
+
+    private int visitRange(double x, double y, double radius, IntConsumer action, int[] result)
+    {
+        if (m_count == 0 || radius < 0)
+        {
+            return 0;
+        }
+        int found = 0;
+        double radiusSquared = radius * radius;
+        long fromX = Math.max(cellOf(x - radius), m_minCellX);
+        long toX = Math.min(cellOf(x + radius), m_maxCellX);
+        long fromY = Math.max(cellOf(y - radius), m_minCellY);
+        long toY = Math.min(cellOf(y + radius), m_maxCellY);
+        if (fromX > toX || fromY > toY)
+        {
+            return 0;
+        }
+        if (isSparse((toX - fromX + 1) * (toY - fromY + 1)))
+        {
+            for (int i = 0; i < m_count; i++)
+            {
+                found = visit(i, x, y, radiusSquared, action, result, found);
+            }
+            return found;
+        }
+        for (long cellY = fromY; cellY <= toY; cellY++)
+        {
+            for (long cellX = fromX; cellX <= toX; cellX++)
+            {
+                for (int i = m_bucketHead[bucketOf(cellX, cellY)]; i != NONE; i = m_next[i])
+                {
+                    if (m_cellX[i] == cellX && m_cellY[i] == cellY)
+                    {
+                        found = visit(i, x, y, radiusSquared, action, result, found);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private int visit(int robot, double x, double y, double radiusSquared, IntConsumer action, int[] result, int found)
+    {
+        double diffX = m_positionX[robot] - x;
+        double diffY = m_positionY[robot] - y;
+        if (diffX * diffX + diffY * diffY > radiusSquared)
+        {
+            return found;
+        }
+        if (action != null)
+        {
+            action.accept(robot);
+        }
+        else if (found < result.length)
+        {
+            result[found] = robot;
+        }
+        return found + 1;
+    }
+
+    /**
+     * Номер клетки в пределах int: бесконечные и огромные координаты
+     * дают крайние клетки, NaN - нулевую.
+     */
+    private int cellOf(double coordinate)
+    {
+        return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.floor(coordinate / m_cellSize)));
+    }
+
+    private int bucketOf(long cellX, long cellY)
+    {
+        int hash = (int)cellX * 0x9E3779B1 + (int)cellY * 0x85EBCA77;
+        return (hash ^ (hash >>> 16)) & m_bucketMask;
+    }
+
+    private void insert(int robot, int cellX, int cellY)
+    {
+        int bucket = bucketOf(cellX, cellY);
+        int head = m_bucketHead[bucket];
+        m_cellX[robot] = cellX;
+        m_cellY[robot] = cellY;
+        m_previous[robot] = NONE;
+        m_next[robot] = head;
+        if (head != NONE)
+        {
+            m_previous[head] = robot;
+        }
+        m_bucketHead[bucket] = robot;
+    }
+
+    private void remove(int robot)
+    {
+        int previous = m_previous[robot];
+        int next = m_next[robot];
+        if (previous != NONE)
+        {
+            m_next[previous] = next;
+        }
+        else
+        {
+            m_bucketHead[bucketOf(m_cellX[robot], m_cellY[robot])] = next;
+        }
+        if (next != NONE)
+        {
+            m_previous[next] = previous;
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= m_next.length)
+        {
+            return;
+        }
+        capacity = Math.max(capacity, m_next.length * 2);
+        m_cellX = Arrays.copyOf(m_cellX, capacity);
+        m_cellY = Arrays.copyOf(m_cellY, capacity);
+        m_next = Arrays.copyOf(m_next, capacity);
+        m_previous = Arrays.copyOf(m_previous, capacity);
+        m_positionX = Arrays.copyOf(m_positionX, capacity);
+        m_positionY = Arrays.copyOf(m_positionY, capacity);
+    }
+}
@@ -0,0 +1,113 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Тот же шаг, что и в {@link ScalarKinematics}, но сразу для
+ * {@code SPECIES.length()} роботов. Хвост диапазона досчитывает скалярное ядро.
+ * Векторные sin, cos и atan2 могут отличаться от Math в последних битах,
+ * поэтому траектории совпадают со скалярными лишь приближённо.
+ *
+ * Класс загружается только через {@link KinematicsKernel#vector()} и
+ * требует --add-modules jdk.incubator.vector при компиляции и запуске.
+ */
+final class VectorKinematics implements KinematicsKernel
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double TWO_PI = Angles.TWO_PI;
+    private static final double REACHED_DISTANCE_SQUARED =
+        RobotWorld.TARGET_REACHED_DISTANCE * RobotWorld.TARGET_REACHED_DISTANCE;
+
+    @Override
+    public int laneCount()
+    {
+        return SPECIES.length();
+    }
+
+    @Override
+    public int update(RobotWorld world, int from, int to, double duration)
+    {
+        final double[] positionX = world.positionX();
+        final double[] positionY = world.positionY();
+        final double[] direction = world.direction();
+        final double[] sinDirection = world.sinDirection();
+        final double[] cosDirection = world.cosDirection();
+        final double[] targetX = world.targetX();
+        final double[] targetY = world.targetY();
+        final double[] waypointX = world.waypointX();
+        final double[] waypointY = world.waypointY();
+        final double[] maxVelocity = world.maxVelocity();
+        final double[] maxAngularVelocity = world.maxAngularVelocity();
+
+        int moving = 0;
+        int i = from;
+        int upperBound = from + SPECIES.loopBound(to - from);
+        for (; i < upperBound; i += SPECIES.length())
+        {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, positionX, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, positionY, i);
+            DoubleVector diffX = DoubleVector.fromArray(SPECIES, targetX, i).sub(x);
+            DoubleVector diffY = DoubleVector.fromArray(SPECIES, targetY, i).sub(y);
+            VectorMask<Double> active = diffX.mul(diffX).add(diffY.mul(diffY))
+                .compare(VectorOperators.GE, REACHED_DISTANCE_SQUARED);
+            if (!active.anyTrue())
+            {
+                continue;
+            }
+            moving += active.trueCount();
+
+            DoubleVector heading = DoubleVector.fromArray(SPECIES, direction, i);
+            DoubleVector angle = DoubleVector.fromArray(SPECIES, waypointY, i).sub(y)
+                .lanewise(VectorOperators.ATAN2, DoubleVector.fromArray(SPECIES, waypointX, i).sub(x));
+            angle = angle.add(TWO_PI, angle.compare(VectorOperators.LT, 0));
+
+            // кратчайшая разность курсов в (-π, π], как в Angles.difference:
+            // оба угла в [0, 2π), так что хватает одной поправки
+            DoubleVector difference = angle.sub(heading);
+            difference = difference.sub(TWO_PI, difference.compare(VectorOperators.GT, Math.PI));
+            difference = difference.add(TWO_PI, difference.compare(VectorOperators.LE, -Math.PI));
+
+            // знак поворота: +1, -1 или 0; без угловой скорости робот едет прямо
+            DoubleVector velocity = DoubleVector.fromArray(SPECIES, maxVelocity, i);
+            DoubleVector angularVelocity = DoubleVector.fromArray(SPECIES, maxAngularVelocity, i);
+            DoubleVector sign = DoubleVector.zero(SPECIES)
+                .blend(1, difference.compare(VectorOperators.GT, 0))
+                .blend(-1, difference.compare(VectorOperators.LT, 0));
+            VectorMask<Double> turning = sign.compare(VectorOperators.NE, 0)
+                .and(angularVelocity.compare(VectorOperators.GT, 0));
+            sign = sign.blend(0, turning.not());
+            DoubleVector turn = angularVelocity.mul(duration);
+            DoubleVector radius = velocity.div(angularVelocity);
+            DoubleVector straight = velocity.mul(duration);
+
+            DoubleVector sinHeading = DoubleVector.fromArray(SPECIES, sinDirection, i);
+            DoubleVector cosHeading = DoubleVector.fromArray(SPECIES, cosDirection, i);
+            DoubleVector newHeading = heading.add(sign.mul(turn));
+            DoubleVector newSin = newHeading.lanewise(VectorOperators.SIN).blend(sinHeading, turning.not());
+            DoubleVector newCos = newHeading.lanewise(VectorOperators.COS).blend(cosHeading, turning.not());
+
+            DoubleVector signedRadius = sign.mul(radius);
+            DoubleVector newX = x.add(signedRadius.mul(newSin.sub(sinHeading)))
+                .blend(x.add(cosHeading.mul(straight)), turning.not());
+            DoubleVector newY = y.sub(signedRadius.mul(newCos.sub(cosHeading)))
+                .blend(y.add(sinHeading.mul(straight)), turning.not());
+
+            newHeading = newHeading.add(TWO_PI, newHeading.compare(VectorOperators.LT, 0));
+            newHeading = newHeading.sub(TWO_PI, newHeading.compare(VectorOperators.GE, TWO_PI));
+
+            newX.intoArray(positionX, i, active);
+            newY.intoArray(positionY, i, active);
+            newHeading.intoArray(direction, i, active);
+            newSin.intoArray(sinDirection, i, active);
+            newCos.intoArray(cosDirection, i, active);
+        }
+        if (i < to)
+        {
+            moving += ScalarKinematics.instance.update(world, i, to, duration);
+        }
+        return moving;
+    }
+}
@@ -0,0 +1,254 @@
+package model;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Состояние мира движка на одном шаге: все массивы роботов, препятствия
+ * и переключатель столкновений роботов. Снимается и восстанавливается под
+ * блокировкой движка, а в канал пишется и читается столбцами целиком,
+ * поэтому восстановление большого мира - это чтение файла и копирование
+ * массивов, а не построение сценария заново.
+ *
+ * Формат (little-endian): шаг (long), число роботов (int), столкновения
+ * (byte), число прямоугольников и кругов (int, int), затем препятствия
+ * и RobotWorld.STATE_FIELDS столбцов по числу роботов значений double.
+ */
+public final class WorldCheckpoint
+{
+    private static final int HEADER_SIZE = 8 + 4 + 1 + 4 + 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+    /**
+     * Предел для каналов без известного размера: столбец остаётся массивом Java.
+     */
+    private static final int MAX_ROBOTS = Integer.MAX_VALUE - 8;
+
+    private final long m_tick;
+    private final int m_count;
+    private final double[][] m_state;
+    private final double[] m_rectangles;
+    private final int m_rectangleCount;
+    private final double[] m_circles;
+    private final int m_circleCount;
+    private final boolean m_robotCollisions;
+
+    WorldCheckpoint(long tick, int count, double[][] state, ObstacleMap obstacles, boolean robotCollisions)
+    {
+        m_tick = tick;
+        m_count = count;
+        m_state = state;
+        m_rectangleCount = obstacles.getRectangleCount();
+        m_rectangles = new double[m_rectangleCount * 4];
+        for (int i = 0; i < m_rectangleCount; i++)
+        {
+            m_rectangles[i * 4] = obstacles.getRectangleX(i);
+            m_rectangles[i * 4 + 1] = obstacles.getRectangleY(i);
+            m_rectangles[i * 4 + 2] = obstacles.getRectangleWidth(i);
+            m_rectangles[i * 4 + 3] = obstacles.getRectangleHeight(i);
+        }
+        m_circleCount = obstacles.getCircleCount();
+        m_circles = new double[m_circleCount * 3];
+        for (int i = 0; i < m_circleCount; i++)
+        {
+            m_circles[i * 3] = obstacles.getCircleX(i);
+            m_circles[i * 3 + 1] = obstacles.getCircleY(i);
+            m_circles[i * 3 + 2] = obstacles.getCircleRadius(i);
+        }
+        m_robotCollisions = robotCollisions;
+    }
+
+    private WorldCheckpoint(long tick, int count, double[][] state, double[] rectangles, int rectangleCount,
+        double[] circles, int circleCount, boolean robotCollisions)
+    {
+        m_tick = tick;
+        m_count = count;
+        m_state = state;
+        m_rectangles = rectangles;
+        m_rectangleCount = rectangleCount;
+        m_circles = circles;
+        m_circleCount = circleCount;
+        m_robotCollisions = robotCollisions;
+    }
+
+    /**
+     * Копирует текущее состояние движка; после этого движок можно сразу
+     * продолжать, а снимок - писать в другом потоке.
+     */
+    public static WorldCheckpoint capture(SimulationEngine engine)
+    {
+        return engine.checkpoint();
+    }
+
+    /**
+     * Заменяет мир, препятствия и шаг движка сохранёнными.
+     */
+    public void restore(SimulationEngine engine)
+    {
+        engine.restore(this);
+    }
+
+    public long getTick()
+    {
+        return m_tick;
+    }
+
+    public int size()
+    {
+        return m_count;
+    }
+
+    double[][] state()
+    {
+        return m_state;
+    }
+
+    ObstacleMap obstacles()
+    {
+        return m_rectangleCount + m_circleCount == 0
+            ? ObstacleMap.empty()
+            : new ObstacleMap(m_rectangles, m_rectangleCount, m_circles, m_circleCount);
+    }
+
+    boolean isRobotCollisionsEnabled()
+    {
+        return m_robotCollisions;
+    }
+
+    /**
+     * Пишет снимок с текущей позиции канала.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(m_tick);
+        buffer.putInt(m_count);
+        buffer.put((byte)(m_robotCollisions ? 1 : 0));
+        buffer.putInt(m_rectangleCount);
+        buffer.putInt(m_circleCount);
+        writeDoubles(channel, buffer, m_rectangles, m_rectangleCount * 4);
+        writeDoubles(channel, buffer, m_circles, m_circleCount * 3);
+        for (double[] column : m_state)
+        {
+            writeDoubles(channel, buffer, column, m_count);
+        }
+        flush(channel, buffer);
+    }
+
+    /**
+     * Читает снимок с текущей позиции канала ровно до его конца, так что
+     * за ним в том же канале могут идти другие данные. Размеры из заголовка
+     * сверяются с остатком канала до выделения массивов, так что испорченный
+     * файл даёт IOException, а не OutOfMemoryError.
+     */
+    public static WorldCheckpoint readFrom(ReadableByteChannel channel) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, buffer, HEADER_SIZE);
+        long tick = buffer.getLong();
+        int count = buffer.getInt();
+        boolean robotCollisions = buffer.get() != 0;
+        int rectangleCount = buffer.getInt();
+        int circleCount = buffer.getInt();
+        long bytes = ((long)rectangleCount * 4 + (long)circleCount * 3 + (long)count * RobotWorld.STATE_FIELDS)
+            * Double.BYTES;
+        long available = channel instanceof SeekableByteChannel
+            ? ((SeekableByteChannel)channel).size() - ((SeekableByteChannel)channel).position()
+            : Long.MAX_VALUE;
+        if (tick < 0 || count < 0 || rectangleCount < 0 || circleCount < 0
+            || rectangleCount > Integer.MAX_VALUE / 4 || circleCount > Integer.MAX_VALUE / 3
+            || count > MAX_ROBOTS || bytes > available)
+        {
+            throw new IOException("Corrupted world checkpoint: tick " + tick + ", robots " + count
+                + ", obstacles " + rectangleCount + "/" + circleCount);
+        }
+        double[] rectangles = readDoubles(channel, buffer, rectangleCount * 4);
+        double[] circles = readDoubles(channel, buffer, circleCount * 3);
+        try
+        {
+            for (int i = 0; i < rectangleCount; i++)
+            {
+                ObstacleMap.checkRectangle(rectangles[i * 4], rectangles[i * 4 + 1], rectangles[i * 4 + 2],
+                    rectangles[i * 4 + 3]);
+            }
+            for (int i = 0; i < circleCount; i++)
+            {
+                ObstacleMap.checkCircle(circles[i * 3], circles[i * 3 + 1], circles[i * 3 + 2]);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Corrupted world checkpoint: obstacle " + e.getMessage(), e);
+        }
+        double[][] state = new double[RobotWorld.STATE_FIELDS][];
+        for (int field = 0; field < RobotWorld.STATE_FIELDS; field++)
+        {
+            state[field] = readDoubles(channel, buffer, count);
+        }
+        return new WorldCheckpoint(tick, count, state, rectangles, rectangleCount, circles, circleCount,
+            robotCollisions);
+    }
+
+    private static void writeDoubles(WritableByteChannel channel, ByteBuffer buffer, double[] values, int count)
+        throws IOException
+    {
+        int offset = 0;
+        while (offset < count)
+        {
+            int chunk = Math.min(count - offset, buffer.remaining() / Double.BYTES);
+            if (chunk == 0)
+            {
+                flush(channel, buffer);
+                continue;
+            }
+            buffer.asDoubleBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Double.BYTES);
+            offset += chunk;
+        }
+    }
+
+    private static void flush(WritableByteChannel channel, ByteBuffer buffer) throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static double[] readDoubles(ReadableByteChannel channel, ByteBuffer buffer, int count)
+        throws IOException
+    {
+        double[] values = new double[count];
+        int offset = 0;
+        while (offset < count)
+        {
+            int chunk = Math.min(count - offset, buffer.capacity() / Double.BYTES);
+            readFully(channel, buffer, chunk * Double.BYTES);
+            buffer.asDoubleBuffer().get(values, offset, chunk);
+            offset += chunk;
+        }
+        return values;
+    }
+
+    /**
+     * Читает ровно bytes байт, не заглядывая дальше.
+     */
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer, int bytes) throws IOException
+    {
+        buffer.clear().limit(bytes);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer) < 0)
+            {
+                throw new EOFException("World checkpoint is truncated");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,143 @@
+package model;
+
+/**
+ * Согласованный снимок мира на момент окончания шага. Заполняется только
+ * в {@link SnapshotBuffer}, читатель видит его неизменным.
+ *
+ * Кроме состояния после последнего шага хранит положения до него.
+ * getInterpolated* дают положение между ними по доле шага, которую
+ * {@link SnapshotBuffer#acquire()} берёт из часов модели, так что
+ * отрисовка движется плавно и между шагами.
+ */
+public final class WorldSnapshot
+{
+    private long m_version;
+    private long m_tick;
+    private int m_count;
+    private double[] m_positionX = new double[0];
+    private double[] m_positionY = new double[0];
+    private double[] m_direction = new double[0];
+    private double[] m_targetX = new double[0];
+    private double[] m_targetY = new double[0];
+    private double[] m_previousX = new double[0];
+    private double[] m_previousY = new double[0];
+    private double[] m_previousDirection = new double[0];
+    private boolean m_previousCaptured;
+    private double m_interpolation = 1;
+
+    /**
+     * Запоминает положения роботов перед последним шагом.
+     */
+    void copyPreviousFrom(RobotWorld world)
+    {
+        int count = world.size();
+        if (m_previousX.length < count)
+        {
+            m_previousX = new double[count];
+            m_previousY = new double[count];
+            m_previousDirection = new double[count];
+        }
+        world.copyPositionsTo(m_previousX, m_previousY, m_previousDirection);
+        m_previousCaptured = true;
+    }
+
+    void copyFrom(RobotWorld world, long tick, long version)
+    {
+        int count = world.size();
+        if (m_positionX.length < count)
+        {
+            m_positionX = new double[count];
+            m_positionY = new double[count];
+            m_direction = new double[count];
+            m_targetX = new double[count];
+            m_targetY = new double[count];
+        }
+        world.copyTo(m_positionX, m_positionY, m_direction, m_targetX, m_targetY);
+        m_count = count;
+        m_tick = tick;
+        m_version = version;
+        if (!m_previousCaptured)
+        {
+            // шага не было, интерполировать не между чем
+            copyPreviousFrom(world);
+        }
+        m_previousCaptured = false;
+        m_interpolation = 1;
+    }
+
+    void setInterpolation(double interpolation)
+    {
+        m_interpolation = interpolation;
+    }
+
+    long getVersion()
+    {
+        return m_version;
+    }
+
+    public long getTick()
+    {
+        return m_tick;
+    }
+
+    public int size()
+    {
+        return m_count;
+    }
+
+    public double getPositionX(int robot)
+    {
+        return m_positionX[robot];
+    }
+
+    public double getPositionY(int robot)
+    {
+        return m_positionY[robot];
+    }
+
+    public double getDirection(int robot)
+    {
+        return m_direction[robot];
+    }
+
+    public double getTargetX(int robot)
+    {
+        return m_targetX[robot];
+    }
+
+    public double getTargetY(int robot)
+    {
+        return m_targetY[robot];
+    }
+
+    /**
+     * Доля шага в [0, 1], на которую отрисовка находится между положением
+     * до последнего шага (0) и после него (1).
+     */
+    public double getInterpolation()
+    {
+        return m_interpolation;
+    }
+
+    public double getInterpolatedX(int robot)
+    {
+        double current = m_positionX[robot];
+        return m_interpolation == 1 ? current
+            : m_previousX[robot] + (current - m_previousX[robot]) * m_interpolation;
+    }
+
+    public double getInterpolatedY(int robot)
+    {
+        double current = m_positionY[robot];
+        return m_interpolation == 1 ? current
+            : m_previousY[robot] + (current - m_previousY[robot]) * m_interpolation;
+    }
+
+    public double getInterpolatedDirection(int robot)
+    {
+        double current = m_direction[robot];
+        return m_interpolation == 1 ? current
+            : Angles.normalize(m_previousDirection[robot]
+                + Angles.difference(m_previousDirection[robot], current) * m_interpolation);
+    }
+}
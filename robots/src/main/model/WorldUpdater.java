@@ -0,0 +1,14 @@
+package model;
+
+public interface WorldUpdater
+{
+    /**
+     * Возвращает число роботов, которые ещё двигаются.
+     */
+    int update(RobotWorld world, double duration);
+
+    static WorldUpdater sequential()
+    {
+        return RobotWorld::update;
+    }
+}